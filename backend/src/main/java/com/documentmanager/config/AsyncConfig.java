@@ -21,4 +21,16 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    // Builds the per-user fuzzy OCR term indexes off the request threads
+    @Bean(name = "searchIndexExecutor")
+    public Executor searchIndexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("SearchIndex-");
+        executor.initialize();
+        return executor;
+    }
 }
\ No newline at end of file
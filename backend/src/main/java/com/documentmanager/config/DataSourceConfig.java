@@ -0,0 +1,81 @@
+package com.documentmanager.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+/**
+ * Primary datasource from spring.datasource.*, plus optional routing of read-only
+ * transactions to a replica when datasource.replica.url is set.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${datasource.replica.url:}")
+    private String replicaUrl;
+
+    @Value("${datasource.replica.username:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${datasource.replica.password:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${datasource.replica.max-pool-size:10}")
+    private int replicaMaxPoolSize;
+
+    @Value("${datasource.replica.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Value("${datasource.replica.retry-ms:30000}")
+    private long retryMillis;
+
+    private HikariDataSource replicaDataSource;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                 RecentWrites recentWrites) {
+        if (replicaUrl.isBlank()) {
+            return primaryDataSource;
+        }
+
+        replicaDataSource = new HikariDataSource();
+        replicaDataSource.setPoolName("replica");
+        replicaDataSource.setDriverClassName(properties.getDriverClassName());
+        replicaDataSource.setJdbcUrl(replicaUrl);
+        replicaDataSource.setUsername(replicaUsername);
+        replicaDataSource.setPassword(replicaPassword);
+        replicaDataSource.setMaximumPoolSize(replicaMaxPoolSize);
+        replicaDataSource.setReadOnly(true);
+        // Start even if the replica is down, and give up on it quickly so reads fall back to the primary
+        replicaDataSource.setInitializationFailTimeout(-1);
+        replicaDataSource.setConnectionTimeout(2000);
+
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, recentWrites,
+                        readYourWritesMillis, retryMillis));
+    }
+
+    @PreDestroy
+    public void closeReplica() {
+        if (replicaDataSource != null) {
+            replicaDataSource.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.documentmanager.config;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * When each user's data was last written, by user id. Recorded after commit by whoever
+ * wrote, including background threads (outbox handlers, OCR) that have no request user,
+ * and read by ReplicaRoutingDataSource to keep that user's reads on the primary for a while.
+ */
+@Component
+public class RecentWrites {
+
+    private final Map<Long, Long> lastWriteByUser = new ConcurrentHashMap<>();
+
+    public void recordWrite(Long userId) {
+        if (userId != null) {
+            lastWriteByUser.put(userId, System.currentTimeMillis());
+        }
+    }
+
+    public boolean wroteWithin(Long userId, long millis) {
+        if (userId == null) {
+            return false;
+        }
+        Long lastWrite = lastWriteByUser.get(userId);
+        if (lastWrite == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - lastWrite > millis) {
+            lastWriteByUser.remove(userId, lastWrite);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+package com.documentmanager.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.documentmanager.util.AuthenticatedUser;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the primary.
+ *
+ * A user whose data was written within the last {@code readYourWritesMillis} keeps reading
+ * from the primary, so they never see a lagging replica without the change. Writes are
+ * tracked by user id in RecentWrites: recorded here for the request's own transactions and
+ * by QueryCacheService for every document change, whichever thread made it. The reading
+ * user is the AuthenticatedUser of the request.
+ * If the replica cannot hand out a connection, reads fall back to the primary and the
+ * replica is skipped for {@code retryMillis}.
+ *
+ * Must be wrapped in a LazyConnectionDataSourceProxy: the read-only flag of a transaction
+ * is only set after the transaction manager has asked for its connection.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final DataSource primary;
+    private final RecentWrites recentWrites;
+    private final long readYourWritesMillis;
+    private final long retryMillis;
+
+    private volatile long replicaDownUntil;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, RecentWrites recentWrites,
+                                    long readYourWritesMillis, long retryMillis) {
+        this.primary = primary;
+        this.recentWrites = recentWrites;
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.retryMillis = retryMillis;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Long userId = currentUserId();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            recordWriteOnCommit(userId);
+            return PRIMARY;
+        }
+        if (System.currentTimeMillis() < replicaDownUntil || recentWrites.wroteWithin(userId, readYourWritesMillis)) {
+            return PRIMARY;
+        }
+        return REPLICA;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        DataSource target = determineTargetDataSource();
+        try {
+            return target.getConnection();
+        } catch (SQLException e) {
+            if (target == primary) {
+                throw e;
+            }
+            logger.warn("Replica unavailable, reading from primary for {} ms: {}", retryMillis, e.getMessage());
+            replicaDownUntil = System.currentTimeMillis() + retryMillis;
+            return primary.getConnection();
+        }
+    }
+
+    // The window starts when the write becomes visible, i.e. after commit
+    private void recordWriteOnCommit(Long userId) {
+        if (userId == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentWrites.recordWrite(userId);
+            }
+        });
+    }
+
+    private Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated()
+                && authentication.getPrincipal() instanceof AuthenticatedUser user ? user.getId() : null;
+    }
+}
@@ -1,17 +1,31 @@
 // document_controller.java
 package com.documentmanager.controller;
 
+import com.documentmanager.dto.BulkImportResult;
+import com.documentmanager.dto.CursorPage;
+import com.documentmanager.dto.DocumentFilter;
 import com.documentmanager.dto.DocumentRequest;
 import com.documentmanager.dto.DocumentResponse;
-import com.documentmanager.entity.Document;
+import com.documentmanager.dto.FacetedPage;
+import com.documentmanager.dto.FileDownload;
+import com.documentmanager.dto.SimilarDocumentResponse;
+import com.documentmanager.dto.UploadSessionRequest;
+import com.documentmanager.dto.UploadSessionResponse;
 import com.documentmanager.entity.User;
+import com.documentmanager.service.BulkImportService;
+import com.documentmanager.service.DocumentExportService;
 import com.documentmanager.service.DocumentService;
+import com.documentmanager.service.ImageOptimizationService;
+import com.documentmanager.service.UploadService;
 import com.documentmanager.service.UserService;
+import com.documentmanager.util.FileDownloadWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -19,9 +33,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -35,31 +52,101 @@ public class DocumentController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private UploadService uploadService;
+
+    @Autowired
+    private FileDownloadWriter fileDownloadWriter;
+
+    @Autowired
+    private DocumentExportService documentExportService;
+
+    @Autowired
+    private ImageOptimizationService imageOptimizationService;
+
     @GetMapping
-    public ResponseEntity<Page<DocumentResponse>> getAllDocuments(
+    public ResponseEntity<FacetedPage<DocumentResponse>> getAllDocuments(
             Authentication authentication,
             @RequestParam(defaultValue = "") String search,
+            DocumentFilter filter,
             Pageable pageable) {
 
         User user = userService.findByUsername(authentication.getName());
-        Page<DocumentResponse> documents = documentService.getDocumentsByUser(user, search, pageable);
+        FacetedPage<DocumentResponse> documents = documentService.getDocumentsByUser(user, search, filter, pageable);
         return ResponseEntity.ok(documents);
     }
 
+    // Cursor-based listing: pass the previous response's nextCursor to get the following slice
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPage<DocumentResponse>> scrollDocuments(
+            Authentication authentication,
+            @RequestParam(defaultValue = "") String search,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        if (size < 1 || size > 200) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            User user = userService.findByUsername(authentication.getName());
+            return ResponseEntity.ok(documentService.getDocumentsByUserAfter(user, search, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE) // Specify consumed media type
     public ResponseEntity<DocumentResponse> createDocument(
             @RequestPart("document") @Valid DocumentRequest documentRequest, // Use @RequestPart for JSON part
             @RequestPart(value = "file", required = false) MultipartFile file, // Use @RequestPart for file
+            @RequestParam(defaultValue = "false") boolean checkDuplicates,
             Authentication authentication) {
         try {
             User user = userService.findByUsername(authentication.getName());
-            DocumentResponse createdDocument = documentService.createDocument(documentRequest, file, user, true);
+            if (!checkDuplicates) {
+                DocumentResponse createdDocument = documentService.createDocument(documentRequest, file, user, true);
+                return ResponseEntity.status(HttpStatus.CREATED).body(createdDocument);
+            }
+
+            // Run OCR inline so near-duplicates can be reported in the response
+            DocumentResponse createdDocument = documentService.createDocument(documentRequest, file, user, false);
+            if (createdDocument.isOcrSupported()) {
+                try {
+                    DocumentResponse processed = documentService.processOcrForDocument(createdDocument.getId(), user);
+                    processed.setPossibleDuplicates(documentService.findSimilarDocuments(processed.getId(), user));
+                    createdDocument = processed;
+                } catch (RuntimeException e) {
+                    // The document is committed: a 500 would make the client create it again.
+                    // It is returned without possibleDuplicates and OCR is retried from the outbox.
+                    documentService.requestOcr(createdDocument.getId(), user);
+                }
+            }
             return ResponseEntity.status(HttpStatus.CREATED).body(createdDocument);
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    // Bulk import from a ZIP archive streamed as the request body; the first entry must be the manifest.
+    // There is no multipart variant: multipart requests are capped by spring.servlet.multipart.*.
+    @PostMapping(value = "/import", consumes = "application/zip")
+    public ResponseEntity<BulkImportResult> importArchive(
+            InputStream archive,
+            @RequestParam(defaultValue = "true") boolean processOcr,
+            Authentication authentication) {
+        try {
+            User user = userService.findByUsername(authentication.getName());
+            return ResponseEntity.ok(bulkImportService.importArchive(archive, user, processOcr));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE) // Specify consumed media type
     public ResponseEntity<DocumentResponse> updateDocument(
             @PathVariable Long id,
@@ -100,27 +187,121 @@ public class DocumentController {
         }
     }
 
-    @GetMapping("/{id}/download")
-    public ResponseEntity<Resource> downloadFile(
+    // Resumable upload for large files: create a session, PUT chunks, then complete it
+    @PostMapping("/{id}/uploads")
+    public ResponseEntity<UploadSessionResponse> createUpload(
             @PathVariable Long id,
+            @RequestBody @Valid UploadSessionRequest request,
             Authentication authentication) {
-
         try {
             User user = userService.findByUsername(authentication.getName());
-            Resource resource = documentService.downloadFile(id, user);
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploadService.createSession(id, request, user));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Where to resume after an interruption: the next chunk starts at receivedBytes
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadSessionResponse> getUpload(
+            @PathVariable String uploadId,
+            Authentication authentication) {
+        User user = userService.findByUsername(authentication.getName());
+        return ResponseEntity.ok(uploadService.getSession(uploadId, user));
+    }
 
-            Document document = documentService.getDocumentEntityById(id, user);
-            String filename = document.getFileAttachment().getOriginalFilename();
+    // Raw request body, so the chunk is streamed to disk without multipart buffering
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @PathVariable String uploadId,
+            @RequestParam long offset,
+            @RequestHeader(value = "X-Chunk-SHA256", required = false) String chunkSha256,
+            InputStream chunk,
+            Authentication authentication) {
+        User user = userService.findByUsername(authentication.getName());
+        try {
+            return ResponseEntity.ok(uploadService.writeChunk(uploadId, offset, chunkSha256, chunk, user));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(uploadService.getSession(uploadId, user));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(document.getFileAttachment().getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(resource);
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<DocumentResponse> completeUpload(
+            @PathVariable String uploadId,
+            @RequestParam(defaultValue = "true") boolean processOcr,
+            Authentication authentication) {
+        try {
+            User user = userService.findByUsername(authentication.getName());
+            return ResponseEntity.ok(uploadService.complete(uploadId, user, processOcr));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Void> abortUpload(
+            @PathVariable String uploadId,
+            Authentication authentication) {
+        User user = userService.findByUsername(authentication.getName());
+        uploadService.abort(uploadId, user);
+        return ResponseEntity.noContent().build();
+    }
+
+    // Supports Range (PDF viewers), If-None-Match/If-Modified-Since (304) and HEAD
+    @RequestMapping(value = "/{id}/download", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void downloadFile(
+            @PathVariable Long id,
+            Authentication authentication,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        User user = userService.findByUsername(authentication.getName());
+        FileDownload download = documentService.getFileDownload(id, user);
+        try {
+            fileDownloadWriter.write(download, request, response);
+        } catch (IOException e) {
+            // The file is resolved only when a body is sent, so a missing file shows up here
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // ZIP of the selected documents (filter, or an explicit id list) with a re-importable manifest, streamed as it is written
+    @GetMapping("/export")
+    public void exportDocuments(
+            Authentication authentication,
+            @RequestParam(defaultValue = "") String search,
+            DocumentFilter filter,
+            @RequestParam(required = false) List<Long> ids,
+            HttpServletResponse response) throws IOException {
+
+        try {
+            documentExportService.checkIds(ids);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        User user = userService.findByUsername(authentication.getName());
+
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("documents-" + LocalDate.now() + ".zip").build().toString());
+        documentExportService.export(user, search, filter, ids, response.getOutputStream());
+    }
+
     @DeleteMapping("/{id}/file")
     public ResponseEntity<DocumentResponse> deleteFile(
             @PathVariable Long id,
@@ -149,6 +330,18 @@ public class DocumentController {
         }
     }
 
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<SimilarDocumentResponse>> getSimilarDocuments(
+            @PathVariable Long id,
+            Authentication authentication) {
+        try {
+            User user = userService.findByUsername(authentication.getName());
+            return ResponseEntity.ok(documentService.findSimilarDocuments(id, user));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/{id}/ocr/text")
     public ResponseEntity<Map<String, Object>> getOcrText(
             @PathVariable Long id,
@@ -170,10 +363,11 @@ public class DocumentController {
     public ResponseEntity<Page<DocumentResponse>> searchInOcrText(
             Authentication authentication,
             @RequestParam String query,
+            @RequestParam(defaultValue = "false") boolean fuzzy,
             Pageable pageable) {
         try {
             User user = userService.findByUsername(authentication.getName());
-            Page<DocumentResponse> documents = documentService.searchInOcrText(user, query, pageable);
+            Page<DocumentResponse> documents = documentService.searchInOcrText(user, query, fuzzy, pageable);
             return ResponseEntity.ok(documents);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -204,4 +398,19 @@ public class DocumentController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    // Optimize oversized image uploads of this user: true, false, or omitted to follow the server default
+    @PutMapping("/settings/image-optimization")
+    public ResponseEntity<Map<String, Object>> setImageOptimization(
+            @RequestParam(required = false) Boolean enabled,
+            Authentication authentication) {
+        User user = userService.findByUsername(authentication.getName());
+        user.setOptimizeImages(enabled);
+        userService.save(user);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("optimizeImages", enabled);
+        body.put("effective", imageOptimizationService.isEnabledFor(user));
+        return ResponseEntity.ok(body);
+    }
 }
\ No newline at end of file
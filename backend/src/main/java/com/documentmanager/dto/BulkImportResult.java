@@ -0,0 +1,103 @@
+package com.documentmanager.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BulkImportResult {
+    private int total;
+    private int imported;
+    private int failed;
+    private long durationMillis;
+    private List<Item> items = new ArrayList<>();
+
+    public BulkImportResult() {}
+
+    public Item addItem(String filename) {
+        Item item = new Item(filename);
+        items.add(item);
+        total++;
+        return item;
+    }
+
+    public void succeeded(Item item, Long documentId) {
+        item.setDocumentId(documentId);
+        item.setSuccess(true);
+        imported++;
+    }
+
+    public void failed(Item item, String error) {
+        item.setDocumentId(null);
+        item.setSuccess(false);
+        item.setError(error);
+        failed++;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public static class Item {
+        private String filename;
+        private Long documentId;
+        private boolean success;
+        private String error;
+
+        public Item() {}
+
+        public Item(String filename) {
+            this.filename = filename;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public void setFilename(String filename) {
+            this.filename = filename;
+        }
+
+        public Long getDocumentId() {
+            return documentId;
+        }
+
+        public void setDocumentId(Long documentId) {
+            this.documentId = documentId;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public void setSuccess(boolean success) {
+            this.success = success;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.documentmanager.dto;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Optional facet filters for the document list, bound from query parameters.
+ * A null field means the filter is not applied.
+ */
+public class DocumentFilter {
+
+    public static final String OCR_STATUS_PROCESSED = "processed";
+    public static final String OCR_STATUS_PENDING = "pending";
+    public static final String OCR_STATUS_NONE = "none";
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate dateFrom;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate dateTo;
+
+    private String contentType;
+
+    private Boolean hasFile;
+
+    // One of "processed", "pending" (file attached but not yet OCRed) or "none" (no file)
+    private String ocrStatus;
+
+    public DocumentFilter() {}
+
+    public boolean isEmpty() {
+        return dateFrom == null && dateTo == null && contentType == null && hasFile == null && ocrStatus == null;
+    }
+
+    @Override
+    public String toString() {
+        return "dateFrom=" + dateFrom + "&dateTo=" + dateTo + "&contentType=" + contentType +
+                "&hasFile=" + hasFile + "&ocrStatus=" + ocrStatus;
+    }
+
+    public LocalDate getDateFrom() {
+        return dateFrom;
+    }
+
+    public void setDateFrom(LocalDate dateFrom) {
+        this.dateFrom = dateFrom;
+    }
+
+    public LocalDate getDateTo() {
+        return dateTo;
+    }
+
+    public void setDateTo(LocalDate dateTo) {
+        this.dateTo = dateTo;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Boolean getHasFile() {
+        return hasFile;
+    }
+
+    public void setHasFile(Boolean hasFile) {
+        this.hasFile = hasFile;
+    }
+
+    public String getOcrStatus() {
+        return ocrStatus;
+    }
+
+    public void setOcrStatus(String ocrStatus) {
+        this.ocrStatus = ocrStatus;
+    }
+}
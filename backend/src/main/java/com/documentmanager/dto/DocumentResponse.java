@@ -2,6 +2,7 @@ package com.documentmanager.dto;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class DocumentResponse {
     private Long id;
@@ -22,6 +23,9 @@ public class DocumentResponse {
     private LocalDateTime ocrProcessedAt;
     private boolean ocrSupported;
 
+    // Only set when duplicate checking was requested at upload
+    private List<SimilarDocumentResponse> possibleDuplicates;
+
     public DocumentResponse() {}
 
     public DocumentResponse(Long id, String title, String number, LocalDate date, String description,
@@ -174,4 +178,12 @@ public class DocumentResponse {
     public void setOcrSupported(boolean ocrSupported) {
         this.ocrSupported = ocrSupported;
     }
+
+    public List<SimilarDocumentResponse> getPossibleDuplicates() {
+        return possibleDuplicates;
+    }
+
+    public void setPossibleDuplicates(List<SimilarDocumentResponse> possibleDuplicates) {
+        this.possibleDuplicates = possibleDuplicates;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.documentmanager.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Constructor projection of a document row plus its attachment metadata, fetched with a
+ * single LEFT JOIN. List queries select this instead of Document entities, because the
+ * inverse-side Document.fileAttachment association cannot be lazy and would otherwise
+ * cost one extra query per row.
+ */
+public class DocumentSummary {
+    private final Long id;
+    private final String title;
+    private final String number;
+    private final LocalDate date;
+    private final String description;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime updatedAt;
+    private final String originalFilename;
+    private final String contentType;
+    private final Long fileSize;
+    private final LocalDateTime uploadedAt;
+    private final Boolean ocrProcessed;
+    private final LocalDateTime ocrProcessedAt;
+
+    public DocumentSummary(Long id, String title, String number, LocalDate date, String description,
+                           LocalDateTime createdAt, LocalDateTime updatedAt,
+                           String originalFilename, String contentType, Long fileSize, LocalDateTime uploadedAt,
+                           Boolean ocrProcessed, LocalDateTime ocrProcessedAt) {
+        this.id = id;
+        this.title = title;
+        this.number = number;
+        this.date = date;
+        this.description = description;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.fileSize = fileSize;
+        this.uploadedAt = uploadedAt;
+        this.ocrProcessed = ocrProcessed;
+        this.ocrProcessedAt = ocrProcessedAt;
+    }
+
+    public boolean hasFile() {
+        return contentType != null;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public LocalDateTime getUploadedAt() {
+        return uploadedAt;
+    }
+
+    public Boolean getOcrProcessed() {
+        return ocrProcessed;
+    }
+
+    public LocalDateTime getOcrProcessedAt() {
+        return ocrProcessedAt;
+    }
+}
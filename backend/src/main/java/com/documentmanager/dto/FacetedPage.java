@@ -0,0 +1,24 @@
+package com.documentmanager.dto;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.util.Map;
+
+/**
+ * A page of results plus facet counts. Serializes like a regular Page (so clients
+ * reading "content" keep working) with an extra "facets" property.
+ */
+public class FacetedPage<T> extends PageImpl<T> {
+
+    private final Map<String, Map<String, Long>> facets;
+
+    public FacetedPage(Page<T> page, Map<String, Map<String, Long>> facets) {
+        super(page.getContent(), page.getPageable(), page.getTotalElements());
+        this.facets = facets;
+    }
+
+    public Map<String, Map<String, Long>> getFacets() {
+        return facets;
+    }
+}
@@ -0,0 +1,75 @@
+package com.documentmanager.dto;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Everything needed to serve an attachment, resolved with a single metadata lookup. The
+ * validators come from that lookup; the file itself is resolved only when a body is sent,
+ * since that may recall it from the cold tier.
+ */
+public class FileDownload {
+
+    @FunctionalInterface
+    public interface PathSource {
+        Path resolve() throws IOException;
+    }
+
+    private final PathSource pathSource;
+    private Path path;
+    private final String filename;
+    private final String contentType;
+    private final long size;
+    private final String etag;
+    private final Instant lastModified;
+    // "gzip" if the file at path is stored compressed; size is always the original size
+    private final String contentEncoding;
+
+    public FileDownload(Path path, String filename, String contentType, long size, String etag, Instant lastModified,
+                        String contentEncoding) {
+        this(() -> path, filename, contentType, size, etag, lastModified, contentEncoding);
+    }
+
+    public FileDownload(PathSource pathSource, String filename, String contentType, long size, String etag,
+                        Instant lastModified, String contentEncoding) {
+        this.pathSource = pathSource;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.size = size;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public Path getPath() throws IOException {
+        if (path == null) {
+            path = pathSource.resolve();
+        }
+        return path;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
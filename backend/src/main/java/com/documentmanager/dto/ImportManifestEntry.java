@@ -0,0 +1,64 @@
+package com.documentmanager.dto;
+
+/**
+ * One row of a bulk import manifest (CSV or JSON). {@code filename} refers to a file in the
+ * archive or upload; leave it empty to create a document without a file.
+ */
+public class ImportManifestEntry {
+    private String filename;
+    private String title;
+    private String number;
+    private String date;
+    private String description;
+    private String contentType;
+
+    public ImportManifestEntry() {}
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public void setNumber(String number) {
+        this.number = number;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+}
@@ -0,0 +1,49 @@
+package com.documentmanager.dto;
+
+public class SimilarDocumentResponse {
+    private Long id;
+    private String title;
+    private String number;
+    private double similarity;
+
+    public SimilarDocumentResponse() {}
+
+    public SimilarDocumentResponse(Long id, String title, String number, double similarity) {
+        this.id = id;
+        this.title = title;
+        this.number = number;
+        this.similarity = similarity;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public void setNumber(String number) {
+        this.number = number;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public void setSimilarity(double similarity) {
+        this.similarity = similarity;
+    }
+}
@@ -0,0 +1,55 @@
+package com.documentmanager.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+
+public class UploadSessionRequest {
+    @NotBlank(message = "Filename is required")
+    private String filename;
+
+    private String contentType;
+
+    @NotNull(message = "Size is required")
+    @Positive(message = "Size must be positive")
+    private Long size;
+
+    // Optional SHA-256 of the whole file, verified when the upload is completed
+    @Pattern(regexp = "[0-9a-fA-F]{64}", message = "sha256 must be 64 hex characters")
+    private String sha256;
+
+    public UploadSessionRequest() {}
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+}
@@ -0,0 +1,63 @@
+package com.documentmanager.dto;
+
+import java.time.LocalDateTime;
+
+public class UploadSessionResponse {
+    private String uploadId;
+    private Long documentId;
+    private String filename;
+    private Long size;
+    // Offset of the next chunk to send
+    private Long receivedBytes;
+    private LocalDateTime expiresAt;
+
+    public UploadSessionResponse() {}
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public Long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public void setReceivedBytes(Long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,19 +1,25 @@
 package com.documentmanager.entity;
 
+import com.documentmanager.util.TextNormalizer;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.PartitionKey;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import org.hibernate.annotations.JdbcTypeCode;
-import org.hibernate.type.SqlTypes;
 
+// Indexes and the hash partitioning by user_id are created by the Flyway migrations in db/migration
 @Entity
 @Table(name = "documents")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "documents")
 public class Document {
 
+    // Sequence ids (fetched 50 at a time) so inserts can be JDBC-batched, which IDENTITY prevents
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "documents_seq")
+    @SequenceGenerator(name = "documents_seq", sequenceName = "documents_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank(message = "Title is required")
@@ -41,22 +47,28 @@ public class Document {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    // Partition key of documents, written through user; Hibernate adds it to the WHERE
+    // clause of updates and deletes so they touch a single partition
+    @PartitionKey
+    @Column(name = "user_id", insertable = false, updatable = false)
+    private Long userId;
+
     @OneToOne(mappedBy = "document", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private FileAttachment fileAttachment;
 
-    // OCR-related fields
-    @JdbcTypeCode(SqlTypes.LONGVARCHAR)
-
-    @Lob
-    @Column(name = "ocr_text", columnDefinition = "LONGTEXT")
-    private String ocrText;
-
+    // OCR-related fields. The OCR text itself lives in DocumentOcrText so that list
+    // queries and metadata updates never load or rewrite it.
     @Column(name = "ocr_processed")
     private Boolean ocrProcessed = false;
 
     @Column(name = "ocr_processed_at")
     private LocalDateTime ocrProcessedAt;
 
+    // Search column, folded once on write (Turkish lower-casing, diacritics stripped)
+    // so queries compare against it directly instead of calling LOWER() per row
+    @Column(name = "search_text", length = 2000)
+    private String searchText;
+
     // Constructors
     public Document() {
         this.createdAt = LocalDateTime.now();
@@ -70,7 +82,7 @@ public class Document {
         this.number = number;
         this.date = date;
         this.description = description;
-        this.user = user;
+        setUser(user);
     }
 
     // Getters and Setters
@@ -136,6 +148,11 @@ public class Document {
 
     public void setUser(User user) {
         this.user = user;
+        this.userId = user != null ? user.getId() : null;
+    }
+
+    public Long getUserId() {
+        return userId;
     }
 
     public FileAttachment getFileAttachment() {
@@ -146,17 +163,33 @@ public class Document {
         this.fileAttachment = fileAttachment;
     }
 
+    @PrePersist
+    protected void onCreate() {
+        updateSearchColumns();
+    }
+
     @PreUpdate
     protected void onUpdate() {
         this.updatedAt = LocalDateTime.now();
+        updateSearchColumns();
+    }
+
+    public void updateSearchColumns() {
+        this.searchText = searchTextOf(title, number, description);
     }
 
-    public String getOcrText() {
-        return ocrText;
+    // Folded title, number and description, as stored in search_text
+    public static String searchTextOf(String title, String number, String description) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(title).append('\n').append(number);
+        if (description != null) {
+            sb.append('\n').append(description);
+        }
+        return TextNormalizer.fold(sb.toString());
     }
 
-    public void setOcrText(String ocrText) {
-        this.ocrText = ocrText;
+    public String getSearchText() {
+        return searchText;
     }
 
     public Boolean getOcrProcessed() {
@@ -175,14 +208,12 @@ public class Document {
         this.ocrProcessedAt = ocrProcessedAt;
     }
 
-    public void markOcrAsProcessed(String extractedText) {
-        this.ocrText = extractedText;
+    public void markOcrAsProcessed() {
         this.ocrProcessed = true;
         this.ocrProcessedAt = LocalDateTime.now();
     }
 
     public void resetOcrStatus() {
-        this.ocrText = null;
         this.ocrProcessed = false;
         this.ocrProcessedAt = null;
     }
@@ -0,0 +1,77 @@
+package com.documentmanager.entity;
+
+import com.documentmanager.util.TextNormalizer;
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.PartitionKey;
+import org.hibernate.type.SqlTypes;
+
+/**
+ * OCR text of a document, kept apart from the documents table and only loaded when
+ * the text itself is needed (OCR text endpoint, OCR search, index builds).
+ */
+@Entity
+@Table(name = "document_ocr_texts")
+public class DocumentOcrText {
+
+    @Id
+    @Column(name = "document_id")
+    private Long documentId;
+
+    // Partition key of document_ocr_texts, same as for documents; Hibernate adds it to
+    // the WHERE clause of updates and deletes so they touch a single partition
+    @PartitionKey
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @JdbcTypeCode(SqlTypes.LONGVARCHAR)
+    @Column(name = "text", columnDefinition = "TEXT")
+    private String text;
+
+    // Folded copy of the text for search, see TextNormalizer
+    @JdbcTypeCode(SqlTypes.LONGVARCHAR)
+    @Column(name = "search_text", columnDefinition = "TEXT")
+    private String searchText;
+
+    public DocumentOcrText() {}
+
+    public DocumentOcrText(Long documentId, Long userId, String text) {
+        this.documentId = documentId;
+        this.userId = userId;
+        this.text = text;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void updateSearchText() {
+        this.searchText = TextNormalizer.fold(text);
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getSearchText() {
+        return searchText;
+    }
+}
@@ -0,0 +1,68 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * MinHash signature of a document's OCR text, used for near-duplicate detection.
+ */
+@Entity
+@Table(name = "document_signatures")
+public class DocumentSignature {
+
+    @Id
+    @Column(name = "document_id")
+    private Long documentId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private byte[] signature;
+
+    @Column(nullable = false)
+    private LocalDateTime computedAt;
+
+    public DocumentSignature() {
+        this.computedAt = LocalDateTime.now();
+    }
+
+    public DocumentSignature(Long documentId, Long userId, byte[] signature) {
+        this();
+        this.documentId = documentId;
+        this.userId = userId;
+        this.signature = signature;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public byte[] getSignature() {
+        return signature;
+    }
+
+    public void setSignature(byte[] signature) {
+        this.signature = signature;
+    }
+
+    public LocalDateTime getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(LocalDateTime computedAt) {
+        this.computedAt = computedAt;
+    }
+}
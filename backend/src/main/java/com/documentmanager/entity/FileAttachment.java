@@ -1,14 +1,19 @@
 package com.documentmanager.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "file_attachments")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "file_attachments")
 public class FileAttachment {
 
+    // Sequence ids (fetched 50 at a time) so inserts can be JDBC-batched, which IDENTITY prevents
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_attachments_seq")
+    @SequenceGenerator(name = "file_attachments_seq", sequenceName = "file_attachments_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -26,6 +31,14 @@ public class FileAttachment {
     @Column(nullable = false)
     private String filePath;
 
+    // SHA-256 of the content and key of the shared FileBlob; null for files stored before deduplication
+    @Column(length = 64)
+    private String contentHash;
+
+    // Size as uploaded, when the file was replaced by an optimized image; null otherwise
+    @Column(name = "original_file_size")
+    private Long originalFileSize;
+
     @Column(nullable = false)
     private LocalDateTime uploadedAt;
 
@@ -97,6 +110,22 @@ public class FileAttachment {
         this.filePath = filePath;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getOriginalFileSize() {
+        return originalFileSize;
+    }
+
+    public void setOriginalFileSize(Long originalFileSize) {
+        this.originalFileSize = originalFileSize;
+    }
+
     public LocalDateTime getUploadedAt() {
         return uploadedAt;
     }
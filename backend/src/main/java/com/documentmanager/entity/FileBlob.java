@@ -0,0 +1,93 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A stored file identified by the SHA-256 of its content. Attachments with the same
+ * content share one blob; refCount is kept by FileStorageService and FilePurgeService.
+ */
+@Entity
+@Table(name = "file_blobs")
+public class FileBlob {
+
+    // Only the local copy exists (or the blob was recalled); COLD: in the cold store, local copy dropped
+    public static final String TIER_HOT = "HOT";
+    public static final String TIER_COLD = "COLD";
+
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String filePath;
+
+    @Column(nullable = false)
+    private Long fileSize;
+
+    // Size on disk; smaller than fileSize when the blob is stored compressed
+    @Column(nullable = false)
+    private Long storedSize;
+
+    @Column(nullable = false)
+    private int refCount;
+
+    @Column(nullable = false, length = 8)
+    private String tier = TIER_HOT;
+
+    @Column(nullable = false)
+    private LocalDateTime lastAccessedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public FileBlob() {}
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public Long getStoredSize() {
+        return storedSize;
+    }
+
+    public void setStoredSize(Long storedSize) {
+        this.storedSize = storedSize;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public void setTier(String tier) {
+        this.tier = tier;
+    }
+
+    public LocalDateTime getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,104 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A stored file or blob that no attachment refers to any more. Written in the same transaction
+ * that removes or replaces the attachment and deleted once FilePurgeService has removed
+ * the file from storage.
+ */
+@Entity
+@Table(name = "file_tombstones")
+public class FileTombstone {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_tombstones_seq")
+    @SequenceGenerator(name = "file_tombstones_seq", sequenceName = "file_tombstones_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String filePath;
+
+    // Null for local copies dropped by StorageTieringService
+    @Column(name = "user_id")
+    private Long userId;
+
+    // Null for files of imports that failed before their documents were saved
+    @Column(name = "document_id")
+    private Long documentId;
+
+    // Set when the last reference to a blob was released; the purger re-checks the count
+    @Column(length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private LocalDateTime deletedAt;
+
+    // Not purged before this time: grace period, then lease on claim and backoff on failure
+    @Column(nullable = false)
+    private LocalDateTime purgeAfter;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public FileTombstone() {}
+
+    public FileTombstone(String filePath, String contentHash, Long userId, Long documentId, LocalDateTime purgeAfter) {
+        this.filePath = filePath;
+        this.contentHash = contentHash;
+        this.userId = userId;
+        this.documentId = documentId;
+        this.deletedAt = LocalDateTime.now();
+        this.purgeAfter = purgeAfter;
+    }
+
+    public void claim(LocalDateTime leaseUntil) {
+        this.purgeAfter = leaseUntil;
+    }
+
+    public void markFailed(String error, LocalDateTime retryAt) {
+        this.attempts++;
+        this.purgeAfter = retryAt;
+        this.lastError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public LocalDateTime getPurgeAfter() {
+        return purgeAfter;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,109 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A side effect of a document change, written in the same transaction as the change and
+ * dispatched by OutboxRelay after commit. Handlers may see an event more than once.
+ */
+@Entity
+@Table(name = "outbox_events")
+public class OutboxEvent {
+
+    // Run OCR for the document's current file
+    public static final String OCR_REQUESTED = "OCR_REQUESTED";
+    // Replace the document's oversized image with an optimized copy (without OCR; OCR does it first)
+    public static final String IMAGE_OPTIMIZATION_REQUESTED = "IMAGE_OPTIMIZATION_REQUESTED";
+
+    // Sequence ids so events written by bulk imports are JDBC-batched with the documents
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+    @SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String eventType;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Not dispatched before this time: set on claim (lease) and on failure (backoff)
+    @Column(nullable = false)
+    private LocalDateTime availableAt;
+
+    private LocalDateTime processedAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    public OutboxEvent() {}
+
+    public OutboxEvent(String eventType, Long userId, Long documentId) {
+        this.eventType = eventType;
+        this.userId = userId;
+        this.documentId = documentId;
+        this.createdAt = LocalDateTime.now();
+        this.availableAt = this.createdAt;
+    }
+
+    public void claim(LocalDateTime leaseUntil) {
+        this.availableAt = leaseUntil;
+    }
+
+    public void markProcessed() {
+        this.processedAt = LocalDateTime.now();
+        this.lastError = null;
+    }
+
+    public void markFailed(String error, LocalDateTime retryAt) {
+        this.attempts++;
+        this.availableAt = retryAt;
+        this.lastError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getAvailableAt() {
+        return availableAt;
+    }
+
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
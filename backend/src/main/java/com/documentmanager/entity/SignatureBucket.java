@@ -0,0 +1,65 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * One LSH band of a document signature. Documents sharing a bucket key are
+ * near-duplicate candidates.
+ */
+@Entity
+@Table(name = "signature_buckets")
+public class SignatureBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    @Column(name = "bucket_key", nullable = false)
+    private Long bucketKey;
+
+    public SignatureBucket() {}
+
+    public SignatureBucket(Long userId, Long documentId, Long bucketKey) {
+        this.userId = userId;
+        this.documentId = documentId;
+        this.bucketKey = bucketKey;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public Long getBucketKey() {
+        return bucketKey;
+    }
+
+    public void setBucketKey(Long bucketKey) {
+        this.bucketKey = bucketKey;
+    }
+}
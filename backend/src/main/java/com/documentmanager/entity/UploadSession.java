@@ -0,0 +1,117 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A resumable upload in progress. The received bytes live in a staging file named after
+ * the session id; the file becomes the document's attachment when the upload completes.
+ */
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    @Column(nullable = false)
+    private String filename;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    @Column(nullable = false)
+    private Long totalSize;
+
+    @Column(nullable = false)
+    private Long receivedBytes;
+
+    // Optional SHA-256 of the whole file, checked on completion
+    @Column(length = 64)
+    private String sha256;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    public UploadSession() {}
+
+    public UploadSession(String id, Long userId, Long documentId, String filename, String contentType,
+                         Long totalSize, String sha256, LocalDateTime expiresAt) {
+        this.id = id;
+        this.userId = userId;
+        this.documentId = documentId;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.totalSize = totalSize;
+        this.receivedBytes = 0L;
+        this.sha256 = sha256;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isComplete() {
+        return receivedBytes.equals(totalSize);
+    }
+
+    public String getStagingName() {
+        return "upload-" + id + ".part";
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Long getTotalSize() {
+        return totalSize;
+    }
+
+    public Long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+}
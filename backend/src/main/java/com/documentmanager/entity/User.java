@@ -4,11 +4,17 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
 @Table(name = "users")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache
 public class User {
 
     @Id
@@ -17,6 +23,8 @@ public class User {
 
     @NotBlank(message = "Username is required")
     @Size(min = 3, max = 20, message = "Username must be between 3 and 20 characters")
+    // Natural id so lookups by username resolve through the second-level cache
+    @NaturalId
     @Column(unique = true, nullable = false)
     private String username;
 
@@ -47,6 +55,10 @@ public class User {
     @Column(nullable = false)
     private Boolean active = true;
 
+    // Optimize oversized image uploads; null follows image.optimize.enabled
+    @Column(name = "optimize_images")
+    private Boolean optimizeImages;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Document> documents;
 
@@ -138,6 +150,14 @@ public class User {
         this.active = active;
     }
 
+    public Boolean getOptimizeImages() {
+        return optimizeImages;
+    }
+
+    public void setOptimizeImages(Boolean optimizeImages) {
+        this.optimizeImages = optimizeImages;
+    }
+
     public List<Document> getDocuments() {
         return documents;
     }
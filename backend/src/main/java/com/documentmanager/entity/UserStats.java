@@ -0,0 +1,62 @@
+package com.documentmanager.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Materialized document and OCR counters of one user, so statistics are a primary-key read.
+ */
+@Entity
+@Table(name = "user_stats")
+public class UserStats {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private long documentCount;
+
+    @Column(nullable = false)
+    private long ocrProcessedCount;
+
+    @Column(nullable = false)
+    private long ocrPendingCount;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    public UserStats() {}
+
+    public UserStats(Long userId) {
+        this.userId = userId;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getOcrProcessedCount() {
+        return ocrProcessedCount;
+    }
+
+    public long getOcrPendingCount() {
+        return ocrPendingCount;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setCounts(long documentCount, long ocrProcessedCount, long ocrPendingCount) {
+        this.documentCount = documentCount;
+        this.ocrProcessedCount = ocrProcessedCount;
+        this.ocrPendingCount = ocrPendingCount;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,64 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.DocumentOcrText;
+import com.documentmanager.entity.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// document_ocr_texts is partitioned by user_id; passing the user id lets lookups prune to one partition
+@Repository
+public interface DocumentOcrTextRepository extends JpaRepository<DocumentOcrText, Long> {
+
+    // (documentId, text) pairs used to build the fuzzy OCR term index, in keyset batches by document id
+    @Query("SELECT o.documentId, o.text FROM DocumentOcrText o JOIN Document d ON d.id = o.documentId AND d.user.id = o.userId " +
+            "WHERE d.user = :user AND d.ocrProcessed = true AND o.text IS NOT NULL AND o.documentId > :afterId " +
+            "ORDER BY o.documentId")
+    List<Object[]> findOcrTextByUserAfter(@Param("user") User user, @Param("afterId") Long afterId, Pageable pageable);
+
+    // The same pairs for the documents changed since an index was built
+    @Query("SELECT o.documentId, o.text FROM DocumentOcrText o JOIN Document d ON d.id = o.documentId AND d.user.id = o.userId " +
+            "WHERE d.user = :user AND d.ocrProcessed = true AND o.text IS NOT NULL AND o.documentId IN :ids")
+    List<Object[]> findOcrTextByUserAndDocumentIdIn(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    // Version of the user's OCR text (ocr_index_versions); 0 before the first change
+    @Query(value = "SELECT COALESCE((SELECT v.version FROM ocr_index_versions v WHERE v.user_id = :userId), 0)",
+            nativeQuery = true)
+    long findIndexVersion(@Param("userId") Long userId);
+
+    // Increments the version and records the document under the new version (ocr_index_changes)
+    @Modifying
+    @Query(value = "WITH v AS (INSERT INTO ocr_index_versions (user_id, version) VALUES (:userId, 1) " +
+            "ON CONFLICT (user_id) DO UPDATE SET version = ocr_index_versions.version + 1 RETURNING version) " +
+            "INSERT INTO ocr_index_changes (user_id, version, document_id, created_at) " +
+            "SELECT :userId, v.version, :documentId, :now FROM v", nativeQuery = true)
+    int recordTextChange(@Param("userId") Long userId, @Param("documentId") Long documentId,
+                         @Param("now") LocalDateTime now);
+
+    // One row per version in (afterVersion, upToVersion], fewer if some were deleted already
+    @Query(value = "SELECT c.document_id FROM ocr_index_changes c WHERE c.user_id = :userId " +
+            "AND c.version > :afterVersion AND c.version <= :upToVersion", nativeQuery = true)
+    List<Long> findChangedDocumentIds(@Param("userId") Long userId, @Param("afterVersion") long afterVersion,
+                                      @Param("upToVersion") long upToVersion);
+
+    @Modifying
+    @Query(value = "DELETE FROM ocr_index_changes WHERE created_at < :cutoff", nativeQuery = true)
+    int deleteTextChangesBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    Optional<DocumentOcrText> findByDocumentIdAndUserId(Long documentId, Long userId);
+
+    @Modifying
+    @Query("DELETE FROM DocumentOcrText o WHERE o.documentId = :documentId AND o.userId = :userId")
+    void deleteByDocumentIdAndUserId(@Param("documentId") Long documentId, @Param("userId") Long userId);
+
+    // Rows moved from the legacy documents.ocr_text column by migration V4
+    List<DocumentOcrText> findBySearchTextIsNullAndTextIsNotNull(Pageable pageable);
+}
@@ -1,44 +1,186 @@
 package com.documentmanager.repository;
 
+import com.documentmanager.dto.DocumentSummary;
 import com.documentmanager.entity.Document;
+import com.documentmanager.entity.FileAttachment;
 import com.documentmanager.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
-    Page<Document> findByUser(User user, Pageable pageable);
 
-    @Query("SELECT d FROM Document d WHERE d.user = :user AND " +
-            "(LOWER(d.title) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-            "LOWER(d.number) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-            "LOWER(d.description) LIKE LOWER(CONCAT('%', :search, '%')) OR " +
-            "LOWER(d.ocrText) LIKE LOWER(CONCAT('%', :search, '%')))")
-    Page<Document> findByUserAndSearch(@Param("user") User user, @Param("search") String search, Pageable pageable);
+    // List queries project straight into DocumentSummary with the attachment metadata joined in,
+    // so a page costs one select (plus the count for Page results) regardless of its size.
+    // documents and document_ocr_texts are hash-partitioned by user_id: OCR joins also match
+    // on the user id so both sides are pruned to the user's partition.
+    String SUMMARY = "SELECT new com.documentmanager.dto.DocumentSummary(" +
+            "d.id, d.title, d.number, d.date, d.description, d.createdAt, d.updatedAt, " +
+            "fa.originalFilename, fa.contentType, fa.fileSize, fa.uploadedAt, d.ocrProcessed, d.ocrProcessedAt) ";
+
+    @Query(value = SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa WHERE d.user = :user",
+            countQuery = "SELECT COUNT(d) FROM Document d WHERE d.user = :user")
+    Page<DocumentSummary> findSummariesByUser(@Param("user") User user, Pageable pageable);
+
+    // All search parameters are expected to be folded with TextNormalizer.fold, matching the
+    // precomputed Document.searchText and DocumentOcrText.searchText columns.
+    @Query(value = SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id WHERE d.user = :user AND " +
+            "(d.searchText LIKE CONCAT('%', :search, '%') OR " +
+            "o.searchText LIKE CONCAT('%', :search, '%'))",
+            countQuery = "SELECT COUNT(d) FROM Document d " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id WHERE d.user = :user AND " +
+            "(d.searchText LIKE CONCAT('%', :search, '%') OR " +
+            "o.searchText LIKE CONCAT('%', :search, '%'))")
+    Page<DocumentSummary> findSummariesByUserAndSearch(@Param("user") User user, @Param("search") String search, Pageable pageable);
+
+    // Search combined with facet filters; null filter parameters are ignored
+    String FILTER_CONDITIONS = "WHERE d.user = :user AND " +
+            "(:search = '' OR " +
+            "d.searchText LIKE CONCAT('%', :search, '%') OR " +
+            "o.searchText LIKE CONCAT('%', :search, '%')) AND " +
+            "(CAST(:dateFrom AS LocalDate) IS NULL OR d.date >= :dateFrom) AND " +
+            "(CAST(:dateTo AS LocalDate) IS NULL OR d.date <= :dateTo) AND " +
+            "(CAST(:contentType AS String) IS NULL OR fa.contentType = :contentType) AND " +
+            "(CAST(:hasFile AS Boolean) IS NULL OR (:hasFile = true AND fa.id IS NOT NULL) OR (:hasFile = false AND fa.id IS NULL)) AND " +
+            "(CAST(:ocrStatus AS String) IS NULL OR " +
+            "(:ocrStatus = 'processed' AND d.ocrProcessed = true) OR " +
+            "(:ocrStatus = 'pending' AND d.ocrProcessed = false AND fa.id IS NOT NULL) OR " +
+            "(:ocrStatus = 'none' AND fa.id IS NULL))";
+
+    @Query(value = SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " + FILTER_CONDITIONS,
+            countQuery = "SELECT COUNT(d) FROM Document d LEFT JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " + FILTER_CONDITIONS)
+    Page<DocumentSummary> findSummariesByUserAndFilters(@Param("user") User user,
+                                                        @Param("search") String search,
+                                                        @Param("dateFrom") LocalDate dateFrom,
+                                                        @Param("dateTo") LocalDate dateTo,
+                                                        @Param("contentType") String contentType,
+                                                        @Param("hasFile") Boolean hasFile,
+                                                        @Param("ocrStatus") String ocrStatus,
+                                                        Pageable pageable);
+
+    // Keyset pagination, newest first. Slice queries fetch one extra row instead of running a COUNT.
+    @Query(SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id WHERE d.user = :user AND " +
+            "(:search = '' OR " +
+            "d.searchText LIKE CONCAT('%', :search, '%') OR " +
+            "o.searchText LIKE CONCAT('%', :search, '%')) " +
+            "ORDER BY d.createdAt DESC, d.id DESC")
+    Slice<DocumentSummary> findFirstSliceByUser(@Param("user") User user, @Param("search") String search, Pageable pageable);
+
+    @Query(SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id WHERE d.user = :user AND " +
+            "(d.createdAt, d.id) < (:createdAt, :id) AND " +
+            "(:search = '' OR " +
+            "d.searchText LIKE CONCAT('%', :search, '%') OR " +
+            "o.searchText LIKE CONCAT('%', :search, '%')) " +
+            "ORDER BY d.createdAt DESC, d.id DESC")
+    Slice<DocumentSummary> findSliceByUserAfter(@Param("user") User user, @Param("search") String search,
+                                                @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                                                Pageable pageable);
+
+    // Facet counts in one aggregate pass: one row per (year, content type, OCR processed) bucket.
+    // Content type is null for documents without a file.
+    @Query("SELECT EXTRACT(YEAR FROM d.date), fa.contentType, d.ocrProcessed, COUNT(d) " +
+            "FROM Document d LEFT JOIN d.fileAttachment fa LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " +
+            "WHERE d.user = :user AND " +
+            "(:search = '' OR " +
+            "d.searchText LIKE CONCAT('%', :search, '%') OR " +
+            "o.searchText LIKE CONCAT('%', :search, '%')) " +
+            "GROUP BY EXTRACT(YEAR FROM d.date), fa.contentType, d.ocrProcessed")
+    List<Object[]> countFacetsByUserAndSearch(@Param("user") User user, @Param("search") String search);
 
     // Find documents that need OCR processing
     @Query("SELECT d FROM Document d WHERE d.user = :user AND d.ocrProcessed = false AND d.fileAttachment IS NOT NULL")
     List<Document> findByUserAndOcrNotProcessed(@Param("user") User user);
 
     // Find documents with OCR text
-    @Query("SELECT d FROM Document d WHERE d.user = :user AND d.ocrProcessed = true AND d.ocrText IS NOT NULL")
-    Page<Document> findByUserAndOcrProcessed(@Param("user") User user, Pageable pageable);
+    @Query(value = SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa WHERE d.user = :user AND d.ocrProcessed = true AND " +
+            "EXISTS (SELECT o.documentId FROM DocumentOcrText o WHERE o.documentId = d.id AND o.userId = d.user.id AND o.text IS NOT NULL)",
+            countQuery = "SELECT COUNT(d) FROM Document d WHERE d.user = :user AND d.ocrProcessed = true AND " +
+            "EXISTS (SELECT o.documentId FROM DocumentOcrText o WHERE o.documentId = d.id AND o.userId = d.user.id AND o.text IS NOT NULL)")
+    Page<DocumentSummary> findSummariesByUserAndOcrProcessed(@Param("user") User user, Pageable pageable);
 
     // Search specifically in OCR text
-    @Query("SELECT d FROM Document d WHERE d.user = :user AND d.ocrProcessed = true AND " +
-            "LOWER(d.ocrText) LIKE LOWER(CONCAT('%', :search, '%'))")
-    Page<Document> findByUserAndOcrTextContaining(@Param("user") User user, @Param("search") String search, Pageable pageable);
+    @Query(value = SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " +
+            "WHERE d.user = :user AND d.ocrProcessed = true AND " +
+            "o.searchText LIKE CONCAT('%', :search, '%')",
+            countQuery = "SELECT COUNT(d) FROM Document d JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " +
+            "WHERE d.user = :user AND d.ocrProcessed = true AND " +
+            "o.searchText LIKE CONCAT('%', :search, '%')")
+    Page<DocumentSummary> findSummariesByUserAndOcrTextContaining(@Param("user") User user, @Param("search") String search, Pageable pageable);
+
+    // One page of ids at a time; callers page over larger id sets themselves
+    @Query(SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa WHERE d.user = :user AND d.id IN :ids")
+    List<DocumentSummary> findSummariesByUserAndIdIn(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    // Looked up together with the owner, so the query is pruned to that user's partition
+    Optional<Document> findByIdAndUserId(Long id, Long userId);
+
+    // Rows written before the normalized search columns existed
+    List<Document> findBySearchTextIsNull(Pageable pageable);
+
+    // Bulk update, so the backfill does not run @PreUpdate and keeps updated_at as it was
+    @Modifying
+    @Query("UPDATE Document d SET d.searchText = :searchText WHERE d.id = :id AND d.user.id = :userId")
+    int updateSearchText(@Param("id") Long id, @Param("userId") Long userId, @Param("searchText") String searchText);
+
+    // Export: the filtered list in id order, keyset-paged up to the newest id when the export started
+    String EXPORT_CONDITIONS = FILTER_CONDITIONS + " AND d.id > :afterId AND d.id <= :maxId ORDER BY d.id";
+
+    @Query(SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " + EXPORT_CONDITIONS)
+    List<DocumentSummary> findExportSummaries(@Param("user") User user,
+                                              @Param("search") String search,
+                                              @Param("dateFrom") LocalDate dateFrom,
+                                              @Param("dateTo") LocalDate dateTo,
+                                              @Param("contentType") String contentType,
+                                              @Param("hasFile") Boolean hasFile,
+                                              @Param("ocrStatus") String ocrStatus,
+                                              @Param("afterId") Long afterId,
+                                              @Param("maxId") Long maxId,
+                                              Pageable pageable);
+
+    @Query("SELECT fa FROM Document d JOIN d.fileAttachment fa " +
+            "LEFT JOIN DocumentOcrText o ON o.documentId = d.id AND o.userId = d.user.id " + EXPORT_CONDITIONS)
+    List<FileAttachment> findExportAttachments(@Param("user") User user,
+                                               @Param("search") String search,
+                                               @Param("dateFrom") LocalDate dateFrom,
+                                               @Param("dateTo") LocalDate dateTo,
+                                               @Param("contentType") String contentType,
+                                               @Param("hasFile") Boolean hasFile,
+                                               @Param("ocrStatus") String ocrStatus,
+                                               @Param("afterId") Long afterId,
+                                               @Param("maxId") Long maxId,
+                                               Pageable pageable);
+
+    @Query(SUMMARY + "FROM Document d LEFT JOIN d.fileAttachment fa WHERE d.user = :user AND d.id IN :ids ORDER BY d.id")
+    List<DocumentSummary> findExportSummariesByIds(@Param("user") User user, @Param("ids") Collection<Long> ids);
+
+    @Query("SELECT fa FROM Document d JOIN d.fileAttachment fa WHERE d.user = :user AND d.id IN :ids ORDER BY d.id")
+    List<FileAttachment> findExportAttachmentsByIds(@Param("user") User user, @Param("ids") Collection<Long> ids);
 
-    // Count documents by OCR status
-    @Query("SELECT COUNT(d) FROM Document d WHERE d.user = :user AND d.ocrProcessed = true")
-    long countByUserAndOcrProcessed(@Param("user") User user);
+    @Query("SELECT MAX(d.id) FROM Document d WHERE d.user = :user")
+    Long findMaxIdByUser(@Param("user") User user);
 
-    @Query("SELECT COUNT(d) FROM Document d WHERE d.user = :user AND d.ocrProcessed = false AND d.fileAttachment IS NOT NULL")
-    long countByUserAndOcrPending(@Param("user") User user);
-}
\ No newline at end of file
+    // One row: total documents, OCR processed, OCR pending (file attached, not yet processed)
+    @Query("SELECT COUNT(d), " +
+            "COALESCE(SUM(CASE WHEN d.ocrProcessed = true THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN d.ocrProcessed = false AND fa.id IS NOT NULL THEN 1 ELSE 0 END), 0) " +
+            "FROM Document d LEFT JOIN d.fileAttachment fa WHERE d.user.id = :userId")
+    List<Object[]> countStatsByUserId(@Param("userId") Long userId);
+}
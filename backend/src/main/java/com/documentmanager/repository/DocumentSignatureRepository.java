@@ -0,0 +1,9 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.DocumentSignature;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DocumentSignatureRepository extends JpaRepository<DocumentSignature, Long> {
+}
@@ -2,9 +2,51 @@
 package com.documentmanager.repository;
 
 import com.documentmanager.entity.FileAttachment;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface FileAttachmentRepository extends JpaRepository<FileAttachment, Long> {
-}
\ No newline at end of file
+
+    // Attachment of a user's document in one query, without loading the document itself
+    @Query("SELECT a FROM FileAttachment a WHERE a.document.id = :documentId AND a.document.user.id = :userId")
+    Optional<FileAttachment> findByDocumentIdAndUserId(@Param("documentId") Long documentId, @Param("userId") Long userId);
+
+    // Attachments still at a legacy absolute path or outside the blobs/ layout
+    @Query("SELECT a.id FROM FileAttachment a WHERE a.id > :afterId AND a.filePath NOT LIKE 'blobs/%' ORDER BY a.id")
+    List<Long> findIdsOutsideBlobLayout(@Param("afterId") Long afterId, Pageable pageable);
+
+    List<FileAttachment> findByContentHash(String contentHash);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM FileAttachment a JOIN FETCH a.document d JOIN FETCH d.user WHERE a.id = :id")
+    Optional<FileAttachment> findByIdForUpdate(@Param("id") Long id);
+
+    // Attachments per (blob, key) for a batch of blobs: the actual reference counts and every key in use
+    @Query("SELECT a.contentHash, a.filePath, COUNT(a) FROM FileAttachment a WHERE a.contentHash IN :hashes " +
+            "GROUP BY a.contentHash, a.filePath")
+    List<Object[]> countByContentHashAndFilePath(@Param("hashes") Collection<String> hashes);
+
+    boolean existsByContentHashAndFilePath(String contentHash, String filePath);
+
+    @Query("SELECT a FROM FileAttachment a WHERE a.contentHash IS NULL AND a.id > :afterId ORDER BY a.id")
+    List<FileAttachment> findWithoutBlobAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Blob-backed attachments whose blob row is gone
+    @Query("SELECT a FROM FileAttachment a WHERE a.contentHash IS NOT NULL AND a.id > :afterId " +
+            "AND NOT EXISTS (SELECT b FROM FileBlob b WHERE b.contentHash = a.contentHash) ORDER BY a.id")
+    List<FileAttachment> findWithMissingBlobAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // What the blob-backed attachments would take on disk without deduplication
+    @Query("SELECT COALESCE(SUM(a.fileSize), 0) FROM FileAttachment a WHERE a.contentHash IS NOT NULL")
+    long sumBlobFileSizes();
+}
@@ -0,0 +1,83 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.FileBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+
+    // Serialises everything that adds a reference to the content or decides its file is orphaned,
+    // until commit; unlike a row lock it also holds while the blob row is not inserted yet
+    @Query(value = "SELECT 1 FROM pg_advisory_xact_lock(hashtextextended(:contentHash, 0))", nativeQuery = true)
+    int lockContent(@Param("contentHash") String contentHash);
+
+    // Creates the blob row or takes another reference; either way the row stays locked until commit
+    @Modifying
+    @Query(value = "INSERT INTO file_blobs (content_hash, file_path, file_size, stored_size, ref_count, tier, " +
+            "last_accessed_at, created_at) VALUES (:contentHash, :filePath, :fileSize, :storedSize, 1, 'HOT', :now, :now) " +
+            "ON CONFLICT (content_hash) DO UPDATE SET ref_count = file_blobs.ref_count + 1, " +
+            "last_accessed_at = EXCLUDED.last_accessed_at", nativeQuery = true)
+    int addReference(@Param("contentHash") String contentHash, @Param("filePath") String filePath,
+                     @Param("fileSize") long fileSize, @Param("storedSize") long storedSize,
+                     @Param("now") LocalDateTime now);
+
+    // Where the file was actually put, which differs from the inserted row if it was stored again
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.filePath = :filePath, b.storedSize = :storedSize, b.tier = 'HOT' " +
+            "WHERE b.contentHash = :contentHash")
+    int updateLocation(@Param("contentHash") String contentHash, @Param("filePath") String filePath,
+                       @Param("storedSize") long storedSize);
+
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1 WHERE b.contentHash = :contentHash AND b.refCount > 0")
+    int releaseReference(@Param("contentHash") String contentHash);
+
+    @Query("SELECT b.refCount FROM FileBlob b WHERE b.contentHash = :contentHash")
+    Optional<Integer> findRefCount(@Param("contentHash") String contentHash);
+
+    @Query("SELECT b FROM FileBlob b WHERE b.contentHash > :afterHash ORDER BY b.contentHash")
+    List<FileBlob> findBatchAfter(@Param("afterHash") String afterHash, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM FileBlob b WHERE b.contentHash = :contentHash")
+    Optional<FileBlob> findByIdForUpdate(@Param("contentHash") String contentHash);
+
+    @Query("SELECT COALESCE(SUM(b.fileSize), 0) FROM FileBlob b")
+    long sumFileSizes();
+
+    @Query("SELECT COALESCE(SUM(b.storedSize), 0) FROM FileBlob b")
+    long sumStoredSizes();
+
+    @Query("SELECT COALESCE(SUM(b.storedSize), 0) FROM FileBlob b WHERE b.tier = :tier")
+    long sumStoredSizesByTier(@Param("tier") String tier);
+
+    // Candidates for the cold tier, oldest access first; keyset paging on (lastAccessedAt, contentHash)
+    @Query("SELECT b FROM FileBlob b WHERE b.tier = 'HOT' AND b.lastAccessedAt < :cutoff " +
+            "AND (b.lastAccessedAt > :afterAccess OR (b.lastAccessedAt = :afterAccess AND b.contentHash > :afterHash)) " +
+            "ORDER BY b.lastAccessedAt, b.contentHash")
+    List<FileBlob> findDemotable(@Param("cutoff") LocalDateTime cutoff, @Param("afterAccess") LocalDateTime afterAccess,
+                                 @Param("afterHash") String afterHash, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.lastAccessedAt = :now WHERE b.contentHash IN :hashes AND b.lastAccessedAt < :now")
+    int markAccessed(@Param("hashes") Collection<String> hashes, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE FileBlob b SET b.tier = 'HOT', b.lastAccessedAt = :now WHERE b.contentHash IN :hashes")
+    int markRecalled(@Param("hashes") Collection<String> hashes, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,26 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.FileTombstone;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface FileTombstoneRepository extends JpaRepository<FileTombstone, Long> {
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2), so concurrent purgers claim disjoint batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT t FROM FileTombstone t WHERE t.purgeAfter <= :now AND t.attempts < :maxAttempts ORDER BY t.purgeAfter, t.id")
+    List<FileTombstone> findPurgeable(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts,
+                                      Pageable pageable);
+}
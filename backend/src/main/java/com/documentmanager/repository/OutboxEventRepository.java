@@ -0,0 +1,45 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2), so concurrent relays claim disjoint batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM OutboxEvent e WHERE e.processedAt IS NULL AND e.availableAt <= :now " +
+            "AND e.attempts < :maxAttempts ORDER BY e.id")
+    List<OutboxEvent> findDispatchable(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts,
+                                       Pageable pageable);
+
+    @Query("SELECT COUNT(e) FROM OutboxEvent e WHERE e.processedAt IS NULL")
+    long countPending();
+
+    // Outcome of an event whose handler finished after the relay had saved its batch
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.processedAt = :now, e.lastError = NULL WHERE e.id = :id")
+    int markProcessed(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attempts = e.attempts + 1, e.availableAt = :retryAt, e.lastError = :error " +
+            "WHERE e.id = :id AND e.processedAt IS NULL")
+    int markFailed(@Param("id") Long id, @Param("error") String error, @Param("retryAt") LocalDateTime retryAt);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
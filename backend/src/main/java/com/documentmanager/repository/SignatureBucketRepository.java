@@ -0,0 +1,23 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.SignatureBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SignatureBucketRepository extends JpaRepository<SignatureBucket, Long> {
+
+    // Candidate documents sharing at least one LSH bucket
+    @Query("SELECT DISTINCT b.documentId FROM SignatureBucket b WHERE b.userId = :userId AND b.bucketKey IN :keys AND b.documentId <> :documentId")
+    List<Long> findCandidateDocumentIds(@Param("userId") Long userId, @Param("keys") Collection<Long> keys, @Param("documentId") Long documentId);
+
+    @Modifying
+    @Query("DELETE FROM SignatureBucket b WHERE b.documentId = :documentId")
+    void deleteByDocumentId(@Param("documentId") Long documentId);
+}
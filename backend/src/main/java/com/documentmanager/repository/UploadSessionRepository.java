@@ -0,0 +1,31 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    // Only moves forward from the offset the chunk was written at, so a concurrent chunk cannot be counted twice
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.receivedBytes = :receivedBytes, s.updatedAt = :now, s.expiresAt = :expiresAt " +
+            "WHERE s.id = :id AND s.receivedBytes = :offset")
+    int advance(@Param("id") String id, @Param("offset") long offset, @Param("receivedBytes") long receivedBytes,
+                @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id AND s.receivedBytes = s.totalSize")
+    int deleteCompleted(@Param("id") String id);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.expiresAt < :now")
+    List<String> findExpiredIds(@Param("now") LocalDateTime now);
+}
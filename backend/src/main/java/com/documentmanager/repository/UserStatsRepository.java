@@ -0,0 +1,33 @@
+package com.documentmanager.repository;
+
+import com.documentmanager.entity.UserStats;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface UserStatsRepository extends JpaRepository<UserStats, Long> {
+
+    // Relative upsert, so concurrent writers never overwrite each other's changes, nor race
+    // on creating the row. Users get their row from V3 or with their first document.
+    @Modifying
+    @Query(value = "INSERT INTO user_stats (user_id, document_count, ocr_processed_count, ocr_pending_count, updated_at) " +
+            "VALUES (:userId, :documents, :processed, :pending, :now) " +
+            "ON CONFLICT (user_id) DO UPDATE SET document_count = user_stats.document_count + EXCLUDED.document_count, " +
+            "ocr_processed_count = user_stats.ocr_processed_count + EXCLUDED.ocr_processed_count, " +
+            "ocr_pending_count = user_stats.ocr_pending_count + EXCLUDED.ocr_pending_count, " +
+            "updated_at = EXCLUDED.updated_at", nativeQuery = true)
+    int adjust(@Param("userId") Long userId, @Param("documents") long documents, @Param("processed") long processed,
+               @Param("pending") long pending, @Param("now") LocalDateTime now);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserStats s WHERE s.userId = :userId")
+    Optional<UserStats> findByIdForUpdate(@Param("userId") Long userId);
+}
@@ -0,0 +1,34 @@
+package com.documentmanager.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A storage backend for blob files, addressed by storage key (blobs/ab/cd/&lt;sha256&gt;).
+ * Local disk holds the hot tier; a BlobStore bean, selected with storage.cold.type,
+ * holds the cold tier that StorageTieringService demotes blobs to.
+ */
+public interface BlobStore {
+
+    /**
+     * Short name for logs and metrics
+     */
+    String getName();
+
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Copy a local file to the key, replacing what is there. The object appears whole or not at all.
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Copy the object to a local file that must not exist yet; NoSuchFileException if there is no object
+     */
+    void get(String key, Path target) throws IOException;
+
+    /**
+     * Delete the object; a key that does not exist is not an error
+     */
+    void delete(String key) throws IOException;
+}
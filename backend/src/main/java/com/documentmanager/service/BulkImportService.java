@@ -0,0 +1,419 @@
+package com.documentmanager.service;
+
+import com.documentmanager.dto.BulkImportResult;
+import com.documentmanager.dto.ImportManifestEntry;
+import com.documentmanager.entity.Document;
+import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.OutboxEvent;
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.DocumentRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Bulk document import from a streamed ZIP archive whose first entry is the manifest.
+ *
+ * Files are streamed to storage one at a time, documents are inserted in JDBC-batched
+ * transactions of {@code import.batch-size}, and OCR is requested through the outbox in
+ * the same transaction as each batch.
+ */
+@Service
+public class BulkImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportService.class);
+
+    // Synthetic manifest keys: rows without a filename, and rows repeating an earlier row's filename
+    private static final String METADATA_ONLY_KEY = "\0row-";
+    private static final String DUPLICATE_KEY = "\0duplicate-";
+
+    // Column lengths of documents
+    private static final int MAX_TITLE_LENGTH = 255;
+    private static final int MAX_NUMBER_LENGTH = 255;
+    private static final int MAX_DESCRIPTION_LENGTH = 1000;
+
+    @Value("${import.batch-size:100}")
+    private int batchSize;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private OcrService ocrService;
+
+    @Autowired
+    private QueryCacheService queryCacheService;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private FilePurgeService filePurgeService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private ImageOptimizationService imageOptimizationService;
+
+    /**
+     * Import from a ZIP stream whose first entry is {@code manifest.csv} or {@code manifest.json}.
+     * The archive is read sequentially and never buffered as a whole.
+     */
+    public BulkImportResult importArchive(InputStream archive, User user, boolean processOcr) throws IOException {
+        ImportRun run = new ImportRun(user, processOcr);
+        ZipInputStream zip = new ZipInputStream(archive, StandardCharsets.UTF_8);
+
+        ZipEntry entry = nextFileEntry(zip);
+        if (entry == null || !isManifest(baseName(entry.getName()))) {
+            throw new IllegalArgumentException("The first archive entry must be manifest.csv or manifest.json");
+        }
+        Map<String, ImportManifestEntry> manifest = parseManifest(baseName(entry.getName()), zip.readAllBytes());
+
+        while ((entry = nextFileEntry(zip)) != null) {
+            String filename = baseName(entry.getName());
+            run.addFile(filename, manifest.remove(filename), zip);
+        }
+        run.addEntriesWithoutFile(manifest);
+        return run.finish();
+    }
+
+    private ZipEntry nextFileEntry(ZipInputStream zip) throws IOException {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean isManifest(String filename) {
+        return "manifest.csv".equalsIgnoreCase(filename) || "manifest.json".equalsIgnoreCase(filename);
+    }
+
+    private String baseName(String path) {
+        if (path == null) {
+            return "";
+        }
+        String normalized = path.replace('\\', '/');
+        return normalized.substring(normalized.lastIndexOf('/') + 1);
+    }
+
+    // Manifest entries keyed by filename, in manifest order. Entries without a filename, and
+    // entries naming a file an earlier entry already named, get a synthetic key.
+    private Map<String, ImportManifestEntry> parseManifest(String manifestName, byte[] content) throws IOException {
+        List<ImportManifestEntry> entries;
+        if (manifestName != null && manifestName.toLowerCase().endsWith(".json")) {
+            entries = objectMapper.readValue(content, new TypeReference<List<ImportManifestEntry>>() {});
+        } else {
+            entries = parseCsvManifest(new String(content, StandardCharsets.UTF_8));
+        }
+
+        Map<String, ImportManifestEntry> manifest = new LinkedHashMap<>();
+        int row = 0;
+        for (ImportManifestEntry entry : entries) {
+            row++;
+            String key = entry.getFilename() == null || entry.getFilename().isBlank()
+                    ? METADATA_ONLY_KEY + row
+                    : entry.getFilename();
+            if (manifest.containsKey(key)) {
+                key = DUPLICATE_KEY + row;
+            }
+            manifest.put(key, entry);
+        }
+        return manifest;
+    }
+
+    // CSV with a header row naming the columns (filename, title, number, date, description, contentType)
+    private List<ImportManifestEntry> parseCsvManifest(String content) {
+        List<List<String>> rows = parseCsv(content);
+        List<ImportManifestEntry> entries = new ArrayList<>();
+        if (rows.isEmpty()) {
+            return entries;
+        }
+
+        List<String> header = rows.get(0);
+        for (List<String> row : rows.subList(1, rows.size())) {
+            ImportManifestEntry entry = new ImportManifestEntry();
+            for (int i = 0; i < header.size() && i < row.size(); i++) {
+                String value = row.get(i);
+                switch (header.get(i).trim()) {
+                    case "filename": entry.setFilename(value); break;
+                    case "title": entry.setTitle(value); break;
+                    case "number": entry.setNumber(value); break;
+                    case "date": entry.setDate(value); break;
+                    case "description": entry.setDescription(value); break;
+                    case "contentType": entry.setContentType(value); break;
+                    default: break;
+                }
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    // RFC 4180 style: quoted fields may contain separators, newlines and doubled quotes
+    private List<List<String>> parseCsv(String content) {
+        List<List<String>> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < content.length() && content.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                row.add(field.toString());
+                field.setLength(0);
+                if (!(row.size() == 1 && row.get(0).isEmpty())) {
+                    rows.add(row);
+                }
+                row = new ArrayList<>();
+            } else if (c != '\uFEFF') {
+                field.append(c);
+            }
+        }
+        row.add(field.toString());
+        if (!(row.size() == 1 && row.get(0).isEmpty())) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * State of one import: the current uncommitted batch and the accumulated result.
+     */
+    private class ImportRun {
+        private final User user;
+        private final boolean processOcr;
+        private final boolean optimizeImages;
+        private final long startedAt = System.currentTimeMillis();
+        private final BulkImportResult result = new BulkImportResult();
+        private final List<Document> pendingDocuments = new ArrayList<>();
+        private final List<BulkImportResult.Item> pendingItems = new ArrayList<>();
+
+        private ImportRun(User user, boolean processOcr) {
+            this.user = user;
+            this.processOcr = processOcr;
+            this.optimizeImages = imageOptimizationService.isEnabledFor(user);
+        }
+
+        private void addFile(String filename, ImportManifestEntry entry, InputStream content) {
+            BulkImportResult.Item item = result.addItem(filename);
+            if (entry == null) {
+                result.failed(item, "No manifest entry for file");
+                return;
+            }
+
+            Document document;
+            try {
+                document = toDocument(entry);
+            } catch (IllegalArgumentException e) {
+                result.failed(item, e.getMessage());
+                return;
+            }
+
+            String contentType = entry.getContentType();
+            if (contentType == null || contentType.isBlank()) {
+                contentType = URLConnection.guessContentTypeFromName(filename);
+            }
+            String storedContentType = contentType != null ? contentType : "application/octet-stream";
+
+            // One short transaction per file holds its blob reference until the batch is saved
+            // or, if the batch fails, released again by deleteStoredFile
+            try {
+                FileAttachment attachment = transactionTemplate.execute(status -> {
+                    try {
+                        return fileStorageService.storeFile(content, filename, storedContentType, document);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                document.setFileAttachment(attachment);
+            } catch (UncheckedIOException e) {
+                result.failed(item, "Could not store file: " + e.getCause().getMessage());
+                return;
+            }
+            add(document, item);
+        }
+
+        private void addEntriesWithoutFile(Map<String, ImportManifestEntry> remaining) {
+            for (Map.Entry<String, ImportManifestEntry> manifestEntry : remaining.entrySet()) {
+                ImportManifestEntry entry = manifestEntry.getValue();
+                boolean metadataOnly = manifestEntry.getKey().startsWith(METADATA_ONLY_KEY);
+                BulkImportResult.Item item = result.addItem(metadataOnly ? null : entry.getFilename());
+                if (manifestEntry.getKey().startsWith(DUPLICATE_KEY)) {
+                    result.failed(item, "Duplicate manifest entry for file");
+                    continue;
+                }
+                if (!metadataOnly) {
+                    result.failed(item, "File not found in upload");
+                    continue;
+                }
+                try {
+                    add(toDocument(entry), item);
+                } catch (IllegalArgumentException e) {
+                    result.failed(item, e.getMessage());
+                }
+            }
+        }
+
+        private void add(Document document, BulkImportResult.Item item) {
+            pendingDocuments.add(document);
+            pendingItems.add(item);
+            if (pendingDocuments.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private BulkImportResult finish() {
+            flush();
+            queryCacheService.invalidateUser(user.getId());
+            result.setDurationMillis(System.currentTimeMillis() - startedAt);
+            logger.info("Bulk import for user {}: {} imported, {} failed in {} ms", user.getUsername(),
+                    result.getImported(), result.getFailed(), result.getDurationMillis());
+            return result;
+        }
+
+        private void flush() {
+            if (pendingDocuments.isEmpty()) {
+                return;
+            }
+
+            List<Document> batch = new ArrayList<>(pendingDocuments);
+            List<BulkImportResult.Item> items = new ArrayList<>(pendingItems);
+            pendingDocuments.clear();
+            pendingItems.clear();
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    documentRepository.saveAll(batch);
+                    long pending = batch.stream().filter(d -> d.getFileAttachment() != null).count();
+                    userStatsService.adjust(user.getId(), batch.size(), 0, pending);
+                    if (processOcr || optimizeImages) {
+                        requestProcessing(batch);
+                    }
+                    entityManager.flush();
+                    entityManager.clear();
+                });
+            } catch (RuntimeException e) {
+                logger.error("Bulk import batch of {} documents failed: {}", batch.size(), e.getMessage(), e);
+                for (int i = 0; i < batch.size(); i++) {
+                    deleteStoredFile(batch.get(i));
+                    result.failed(items.get(i), "Database error: " + e.getMessage());
+                }
+                return;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                result.succeeded(items.get(i), batch.get(i).getId());
+            }
+        }
+
+        // Events are committed with the batch and dispatched by the outbox relay; OCR optimizes images first
+        private void requestProcessing(List<Document> batch) {
+            for (Document document : batch) {
+                FileAttachment attachment = document.getFileAttachment();
+                if (attachment == null) {
+                    continue;
+                }
+                if (processOcr && ocrService.isOcrSupported(attachment.getContentType())) {
+                    outboxService.publish(OutboxEvent.OCR_REQUESTED, user.getId(), document.getId());
+                } else if (optimizeImages && imageOptimizationService.isCandidate(attachment)) {
+                    outboxService.publish(OutboxEvent.IMAGE_OPTIMIZATION_REQUESTED, user.getId(), document.getId());
+                }
+            }
+        }
+
+        private Document toDocument(ImportManifestEntry entry) {
+            if (entry.getTitle() == null || entry.getTitle().isBlank()) {
+                throw new IllegalArgumentException("Title is required");
+            }
+            if (entry.getNumber() == null || entry.getNumber().isBlank()) {
+                throw new IllegalArgumentException("Number is required");
+            }
+            if (entry.getDate() == null || entry.getDate().isBlank()) {
+                throw new IllegalArgumentException("Date is required");
+            }
+            // Checked here, so one row cannot fail the insert of its whole batch
+            if (entry.getTitle().trim().length() > MAX_TITLE_LENGTH) {
+                throw new IllegalArgumentException("Title exceeds " + MAX_TITLE_LENGTH + " characters");
+            }
+            if (entry.getNumber().trim().length() > MAX_NUMBER_LENGTH) {
+                throw new IllegalArgumentException("Number exceeds " + MAX_NUMBER_LENGTH + " characters");
+            }
+            if (entry.getDescription() != null && entry.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+                throw new IllegalArgumentException("Description exceeds " + MAX_DESCRIPTION_LENGTH + " characters");
+            }
+
+            LocalDate date;
+            try {
+                date = LocalDate.parse(entry.getDate().trim());
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid date: " + entry.getDate());
+            }
+            return new Document(entry.getTitle().trim(), entry.getNumber().trim(), date, entry.getDescription(), user);
+        }
+
+        private void deleteStoredFile(Document document) {
+            if (document.getFileAttachment() == null) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        filePurgeService.release(document.getFileAttachment(), user.getId()));
+            } catch (RuntimeException e) {
+                logger.warn("Could not release file of failed import item: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,28 +1,48 @@
 package com.documentmanager.service;
 
+import com.documentmanager.dto.CursorPage;
+import com.documentmanager.dto.DocumentFilter;
 import com.documentmanager.dto.DocumentRequest;
 import com.documentmanager.dto.DocumentResponse;
+import com.documentmanager.dto.DocumentSummary;
+import com.documentmanager.dto.FacetedPage;
+import com.documentmanager.dto.FileDownload;
+import com.documentmanager.dto.SimilarDocumentResponse;
 import com.documentmanager.entity.Document;
+import com.documentmanager.entity.DocumentOcrText;
 import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.OutboxEvent;
 import com.documentmanager.entity.User;
+import com.documentmanager.repository.DocumentOcrTextRepository;
 import com.documentmanager.repository.DocumentRepository;
+import com.documentmanager.repository.FileAttachmentRepository;
+import com.documentmanager.service.UserStatsService.DocumentState;
+import com.documentmanager.util.TextNormalizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 @Transactional
@@ -39,24 +59,173 @@ public class DocumentService {
     @Autowired
     private OcrService ocrService;
 
-    public Page<DocumentResponse> getDocumentsByUser(User user, String search, Pageable pageable) {
-        Page<Document> documents;
-        if (search.isEmpty()) {
-            documents = documentRepository.findByUser(user, pageable);
+    @Autowired
+    private QueryCacheService queryCacheService;
+
+    @Autowired
+    private DocumentOcrTextRepository ocrTextRepository;
+
+    @Autowired
+    private OcrTextIndexService ocrTextIndexService;
+
+    @Autowired
+    private DuplicateDetectionService duplicateDetectionService;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private FilePurgeService filePurgeService;
+
+    @Autowired
+    private FileAttachmentRepository fileAttachmentRepository;
+
+    @Autowired
+    private ImageOptimizationService imageOptimizationService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Transactional(readOnly = true)
+    public FacetedPage<DocumentResponse> getDocumentsByUser(User user, String search, DocumentFilter filter, Pageable pageable) {
+        String normalizedSearch = TextNormalizer.fold(search);
+        String cacheKey = "list|" + normalizedSearch + "|" + filter + "|" + pageable;
+        return queryCacheService.get(user.getId(), cacheKey, () -> loadDocumentsByUser(user, normalizedSearch, filter, pageable));
+    }
+
+    private FacetedPage<DocumentResponse> loadDocumentsByUser(User user, String search, DocumentFilter filter, Pageable pageable) {
+        Page<DocumentSummary> documents;
+        if (filter == null || filter.isEmpty()) {
+            if (search.isEmpty()) {
+                documents = documentRepository.findSummariesByUser(user, pageable);
+            } else {
+                documents = documentRepository.findSummariesByUserAndSearch(user, search, pageable);
+            }
         } else {
-            documents = documentRepository.findByUserAndSearch(user, search, pageable);
+            documents = documentRepository.findSummariesByUserAndFilters(user, search,
+                    filter.getDateFrom(), filter.getDateTo(), filter.getContentType(),
+                    filter.getHasFile(), filter.getOcrStatus(), pageable);
         }
-        return documents.map(this::convertToResponse);
+        return new FacetedPage<>(documents.map(this::convertToResponse), getFacetCounts(user, search));
     }
 
+    /**
+     * Keyset-paginated listing ordered by (createdAt, id) descending. The cost of a page does
+     * not depend on how deep it is, and no total count is computed.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<DocumentResponse> getDocumentsByUserAfter(User user, String search, String cursor, int size) {
+        String normalizedSearch = TextNormalizer.fold(search);
+        String cacheKey = "cursor|" + normalizedSearch + "|" + cursor + "|" + size;
+        return queryCacheService.get(user.getId(), cacheKey, () -> {
+            Pageable pageable = PageRequest.of(0, size);
+            Slice<DocumentSummary> slice;
+            if (cursor == null || cursor.isEmpty()) {
+                slice = documentRepository.findFirstSliceByUser(user, normalizedSearch, pageable);
+            } else {
+                CursorPage.Position position = CursorPage.decodeCursor(cursor);
+                slice = documentRepository.findSliceByUserAfter(user, normalizedSearch, position.getCreatedAt(), position.getId(), pageable);
+            }
+
+            List<DocumentSummary> documents = slice.getContent();
+            String nextCursor = null;
+            if (slice.hasNext() && !documents.isEmpty()) {
+                DocumentSummary last = documents.get(documents.size() - 1);
+                nextCursor = CursorPage.encodeCursor(last.getCreatedAt(), last.getId());
+            }
+            return new CursorPage<>(slice.map(this::convertToResponse).getContent(), size, slice.hasNext(), nextCursor);
+        });
+    }
+
+    /**
+     * Facet counts over the user's documents matching the free-text search (facet filters
+     * are not applied, so every option stays visible with its count). All four facets are
+     * rolled up from a single GROUP BY query.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Map<String, Long>> getFacetCounts(User user, String search) {
+        Map<String, Long> years = new TreeMap<>(Comparator.reverseOrder());
+        Map<String, Long> contentTypes = new TreeMap<>();
+        Map<String, Long> hasFile = new LinkedHashMap<>();
+        Map<String, Long> ocrStatus = new LinkedHashMap<>();
+        hasFile.put("true", 0L);
+        hasFile.put("false", 0L);
+        ocrStatus.put(DocumentFilter.OCR_STATUS_PROCESSED, 0L);
+        ocrStatus.put(DocumentFilter.OCR_STATUS_PENDING, 0L);
+        ocrStatus.put(DocumentFilter.OCR_STATUS_NONE, 0L);
+
+        for (Object[] row : documentRepository.countFacetsByUserAndSearch(user, TextNormalizer.fold(search))) {
+            String year = String.valueOf(row[0]);
+            String contentType = (String) row[1];
+            boolean processed = Boolean.TRUE.equals(row[2]);
+            long count = ((Number) row[3]).longValue();
+
+            years.merge(year, count, Long::sum);
+            hasFile.merge(String.valueOf(contentType != null), count, Long::sum);
+            if (contentType != null) {
+                contentTypes.merge(contentType, count, Long::sum);
+            }
+
+            String status;
+            if (processed) {
+                status = DocumentFilter.OCR_STATUS_PROCESSED;
+            } else if (contentType != null) {
+                status = DocumentFilter.OCR_STATUS_PENDING;
+            } else {
+                status = DocumentFilter.OCR_STATUS_NONE;
+            }
+            ocrStatus.merge(status, count, Long::sum);
+        }
+
+        Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+        facets.put("year", years);
+        facets.put("contentType", contentTypes);
+        facets.put("hasFile", hasFile);
+        facets.put("ocrStatus", ocrStatus);
+        return facets;
+    }
+
+    @Transactional(readOnly = true)
     public Page<DocumentResponse> getOcrProcessedDocuments(User user, Pageable pageable) {
-        Page<Document> documents = documentRepository.findByUserAndOcrProcessed(user, pageable);
-        return documents.map(this::convertToResponse);
+        return queryCacheService.get(user.getId(), "ocrProcessed|" + pageable, () ->
+                documentRepository.findSummariesByUserAndOcrProcessed(user, pageable).map(this::convertToResponse));
+    }
+
+    @Transactional(readOnly = true)
+    public Page<DocumentResponse> searchInOcrText(User user, String query, boolean fuzzy, Pageable pageable) {
+        if (fuzzy) {
+            Page<DocumentResponse> page = queryCacheService.get(user.getId(), "ocrSearch|true|" + query + "|" + pageable, () -> {
+                Set<Long> ids = ocrTextIndexService.fuzzySearch(user, query);
+                if (ids == null) {
+                    return null; // not cached
+                }
+                return findSummariesByIds(user, ids, pageable).map(this::convertToResponse);
+            });
+            if (page != null) {
+                return page;
+            }
+            // The user's fuzzy index is still being built in the background; answer exactly meanwhile
+        }
+        return queryCacheService.get(user.getId(), "ocrSearch|false|" + query + "|" + pageable, () ->
+                documentRepository.findSummariesByUserAndOcrTextContaining(user, TextNormalizer.fold(query), pageable)
+                        .map(this::convertToResponse));
     }
 
-    public Page<DocumentResponse> searchInOcrText(User user, String query, Pageable pageable) {
-        Page<Document> documents = documentRepository.findByUserAndOcrTextContaining(user, query, pageable);
-        return documents.map(this::convertToResponse);
+    // Matches are paged in memory, newest first, so only one page of ids is bound however many
+    // documents matched; a requested sort is not applied, as sorting in SQL would bind them all
+    private Page<DocumentSummary> findSummariesByIds(User user, Set<Long> ids, Pageable pageable) {
+        List<Long> sorted = ids.stream().sorted(Comparator.reverseOrder()).toList();
+        int from = (int) Math.min(pageable.getOffset(), sorted.size());
+        List<Long> pageIds = sorted.subList(from, Math.min(from + pageable.getPageSize(), sorted.size()));
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, sorted.size());
+        }
+        List<DocumentSummary> content = new ArrayList<>(documentRepository.findSummariesByUserAndIdIn(user, pageIds));
+        content.sort(Comparator.comparing(DocumentSummary::getId, Comparator.reverseOrder()));
+        return new PageImpl<>(content, pageable, sorted.size());
     }
 
     public DocumentResponse createDocument(DocumentRequest request, MultipartFile file, User user, boolean processOcr) throws IOException {
@@ -68,10 +237,14 @@ public class DocumentService {
         }
 
         Document savedDocument = documentRepository.save(document);
+        userStatsService.documentChanged(user.getId(), DocumentState.ABSENT, DocumentState.of(savedDocument));
+        queryCacheService.invalidateUser(user.getId());
 
         // Process OCR if requested and file is present
         if (processOcr && savedDocument.getFileAttachment() != null) {
-            processOcrAsync(savedDocument);
+            requestOcr(savedDocument, user.getId());
+        } else {
+            requestImageOptimization(savedDocument, user);
         }
 
         return convertToResponse(savedDocument);
@@ -79,6 +252,7 @@ public class DocumentService {
 
     public DocumentResponse updateDocument(Long id, DocumentRequest request, MultipartFile file, User user, boolean processOcr) throws IOException {
         Document document = getDocumentEntityById(id, user);
+        DocumentState before = DocumentState.of(document);
 
         document.setTitle(request.getTitle());
         document.setNumber(request.getNumber());
@@ -86,23 +260,27 @@ public class DocumentService {
         document.setDescription(request.getDescription());
 
         if (file != null && !file.isEmpty()) {
-            // Delete old file if exists
+            // Old file is purged after commit
             if (document.getFileAttachment() != null) {
-                fileStorageService.deleteFile(document.getFileAttachment());
+                removeFileAttachment(document, user.getId());
             }
 
             FileAttachment fileAttachment = fileStorageService.storeFile(file, document);
             document.setFileAttachment(fileAttachment);
 
             // Reset OCR status when file is updated
-            document.resetOcrStatus();
+            clearOcrResults(document, user.getId());
         }
 
         Document savedDocument = documentRepository.save(document);
+        userStatsService.documentChanged(user.getId(), before, DocumentState.of(savedDocument));
+        queryCacheService.invalidateUser(user.getId());
 
         // Process OCR if requested and file is present
         if (processOcr && savedDocument.getFileAttachment() != null && !savedDocument.getOcrProcessed()) {
-            processOcrAsync(savedDocument);
+            requestOcr(savedDocument, user.getId());
+        } else if (file != null && !file.isEmpty()) {
+            requestImageOptimization(savedDocument, user);
         }
 
         return convertToResponse(savedDocument);
@@ -111,63 +289,112 @@ public class DocumentService {
     public void deleteDocument(Long id, User user) {
         Document document = getDocumentEntityById(id, user);
 
+        // The attachment row goes with the document (cascade); the file is purged after commit
         if (document.getFileAttachment() != null) {
-            try {
-                fileStorageService.deleteFile(document.getFileAttachment());
-            } catch (IOException e) {
-                logger.error("Error deleting file for document {}: {}", id, e.getMessage());
-            }
+            filePurgeService.release(document.getFileAttachment(), user.getId());
         }
 
+        DocumentState before = DocumentState.of(document);
         documentRepository.delete(document);
+        userStatsService.documentChanged(user.getId(), before, DocumentState.ABSENT);
+        clearOcrResults(document, user.getId());
+        queryCacheService.invalidateUser(user.getId());
     }
 
     public DocumentResponse uploadFile(Long id, MultipartFile file, User user, boolean processOcr) throws IOException {
         Document document = getDocumentEntityById(id, user);
+        DocumentState before = DocumentState.of(document);
 
         if (document.getFileAttachment() != null) {
-            fileStorageService.deleteFile(document.getFileAttachment());
+            removeFileAttachment(document, user.getId());
         }
 
         FileAttachment fileAttachment = fileStorageService.storeFile(file, document);
         document.setFileAttachment(fileAttachment);
-        document.resetOcrStatus(); // Reset OCR status when new file is uploaded
+        clearOcrResults(document, user.getId()); // Reset OCR status when new file is uploaded
 
         Document savedDocument = documentRepository.save(document);
+        userStatsService.documentChanged(user.getId(), before, DocumentState.of(savedDocument));
+        queryCacheService.invalidateUser(user.getId());
 
         if (processOcr) {
-            processOcrAsync(savedDocument);
+            requestOcr(savedDocument, user.getId());
+        } else {
+            requestImageOptimization(savedDocument, user);
         }
 
         return convertToResponse(savedDocument);
     }
 
-    public Resource downloadFile(Long id, User user) throws IOException {
+    // Completes a resumable upload: same as uploadFile, but the content is already staged and hashed
+    public DocumentResponse attachStagedFile(Long id, StagedBlob blob, String filename, String contentType,
+                                             User user, boolean processOcr) throws IOException {
         Document document = getDocumentEntityById(id, user);
+        DocumentState before = DocumentState.of(document);
 
-        if (document.getFileAttachment() == null) {
-            throw new RuntimeException("No file attached to document");
+        if (document.getFileAttachment() != null) {
+            removeFileAttachment(document, user.getId());
+        }
+
+        FileAttachment fileAttachment = fileStorageService.storeStagedFile(blob, filename, contentType, document);
+        document.setFileAttachment(fileAttachment);
+        clearOcrResults(document, user.getId());
+
+        Document savedDocument = documentRepository.save(document);
+        userStatsService.documentChanged(user.getId(), before, DocumentState.of(savedDocument));
+        queryCacheService.invalidateUser(user.getId());
+
+        if (processOcr) {
+            requestOcr(savedDocument, user.getId());
+        } else {
+            requestImageOptimization(savedDocument, user);
         }
 
-        return fileStorageService.loadFileAsResource(document.getFileAttachment());
+        return convertToResponse(savedDocument);
+    }
+
+    @Transactional(readOnly = true)
+    public FileDownload getFileDownload(Long id, User user) {
+        FileAttachment attachment = fileAttachmentRepository.findByDocumentIdAndUserId(id, user.getId())
+                .orElseThrow(() -> new RuntimeException("No file attached to document"));
+
+        // The content hash identifies the bytes exactly; older files fall back to attachment id and size
+        String etag = attachment.getContentHash() != null
+                ? "\"" + attachment.getContentHash() + "\""
+                : "\"" + attachment.getId() + "-" + attachment.getFileSize() + "\"";
+        // Resolved after this transaction and only if the writer needs the body (not for a 304)
+        return new FileDownload(() -> fileStorageService.getFilePath(attachment), attachment.getOriginalFilename(),
+                attachment.getContentType(), attachment.getFileSize(), etag,
+                attachment.getUploadedAt().atZone(ZoneId.systemDefault()).toInstant(),
+                fileStorageService.getContentEncoding(attachment));
     }
 
     public DocumentResponse deleteFile(Long id, User user) throws IOException {
         Document document = getDocumentEntityById(id, user);
+        DocumentState before = DocumentState.of(document);
 
         if (document.getFileAttachment() != null) {
-            fileStorageService.deleteFile(document.getFileAttachment());
-            document.setFileAttachment(null);
-            document.resetOcrStatus(); // Reset OCR status when file is deleted
+            removeFileAttachment(document, user.getId());
+            clearOcrResults(document, user.getId()); // Reset OCR status when file is deleted
         }
 
         Document savedDocument = documentRepository.save(document);
+        userStatsService.documentChanged(user.getId(), before, DocumentState.of(savedDocument));
+        queryCacheService.invalidateUser(user.getId());
         return convertToResponse(savedDocument);
     }
 
+    // Deletes the attachment row now and leaves the file to FilePurgeService
+    private void removeFileAttachment(Document document, Long userId) {
+        FileAttachment attachment = document.getFileAttachment();
+        filePurgeService.release(attachment, userId);
+        document.setFileAttachment(null);
+        fileAttachmentRepository.delete(attachment);
+    }
+
+    @Transactional(readOnly = true)
     public Document getDocumentEntityById(Long id, User user) {
-        return documentRepository.findById(id)
-                .filter(doc -> doc.getUser().getId().equals(user.getId()))
+        return documentRepository.findByIdAndUserId(id, user.getId())
                 .orElseThrow(() -> new RuntimeException("Document not found"));
     }
 
@@ -184,39 +411,39 @@ public class DocumentService {
         }
 
         try {
-            Path filePath = fileStorageService.getFilePath(document.getFileAttachment());
-            String ocrText = ocrService.extractOcrFromFilePath(filePath, document.getFileAttachment().getContentType());
+            String ocrText = extractOcrText(document.getFileAttachment());
 
-            document.markOcrAsProcessed(ocrText);
-            Document savedDocument = documentRepository.save(document);
+            Document savedDocument = storeOcrResults(document, user.getId(), ocrText);
 
             logger.info("OCR processed for document {}: {} characters extracted", id,
                     ocrText != null ? ocrText.length() : 0);
 
-            return convertToResponse(savedDocument);
+            DocumentResponse response = convertToResponse(savedDocument);
+            response.setOcrText(ocrText);
+            return response;
         } catch (Exception e) {
             logger.error("Error processing OCR for document {}: {}", id, e.getMessage(), e);
             throw new RuntimeException("Failed to process OCR", e);
         }
     }
 
+    @Transactional(readOnly = true)
+    public List<SimilarDocumentResponse> findSimilarDocuments(Long id, User user) {
+        Document document = getDocumentEntityById(id, user);
+        return duplicateDetectionService.findSimilar(user.getId(), document.getId());
+    }
+
+    @Transactional(readOnly = true)
     public String getOcrText(Long id, User user) {
         Document document = getDocumentEntityById(id, user);
-        return document.getOcrText();
+        return ocrTextRepository.findByDocumentIdAndUserId(document.getId(), user.getId())
+                .map(DocumentOcrText::getText)
+                .orElse(null);
     }
 
+    @Transactional(readOnly = true)
     public Map<String, Object> getOcrStatistics(User user) {
-        long totalDocuments = documentRepository.count();
-        long ocrProcessedCount = documentRepository.countByUserAndOcrProcessed(user);
-        long ocrPendingCount = documentRepository.countByUserAndOcrPending(user);
-
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalDocuments", totalDocuments);
-        stats.put("ocrProcessedCount", ocrProcessedCount);
-        stats.put("ocrPendingCount", ocrPendingCount);
-        stats.put("ocrProcessedPercentage", totalDocuments > 0 ? (double) ocrProcessedCount / totalDocuments * 100 : 0);
-
-        return stats;
+        return userStatsService.getStatistics(user);
     }
 
     public int batchProcessOcr(User user) {
@@ -224,11 +451,9 @@ public class DocumentService {
 
         int processedCount = 0;
         for (Document document : pendingDocuments) {
-            try {
-                processOcrAsync(document);
+            if (ocrService.isOcrSupported(document.getFileAttachment().getContentType())) {
+                requestOcr(document, user.getId());
                 processedCount++;
-            } catch (Exception e) {
-                logger.error("Error processing OCR for document {}: {}", document.getId(), e.getMessage());
             }
         }
 
@@ -236,27 +461,139 @@ public class DocumentService {
         return processedCount;
     }
 
-    private void processOcrAsync(Document document) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                if (document.getFileAttachment() != null &&
-                        ocrService.isOcrSupported(document.getFileAttachment().getContentType())) {
+    /**
+     * Hand OCR of the document to the outbox, e.g. after inline OCR failed; the relay
+     * retries it. A no-op if OCR has already been stored.
+     */
+    public void requestOcr(Long id, User user) {
+        Document document = getDocumentEntityById(id, user);
+        if (!Boolean.TRUE.equals(document.getOcrProcessed())) {
+            requestOcr(document, user.getId());
+        }
+    }
 
-                    Path filePath = fileStorageService.getFilePath(document.getFileAttachment());
-                    String ocrText = ocrService.extractOcrFromFilePath(filePath, document.getFileAttachment().getContentType());
+    // OCR runs once this transaction has committed, dispatched through the outbox
+    private void requestOcr(Document document, Long userId) {
+        outboxService.publish(OutboxEvent.OCR_REQUESTED, userId, document.getId());
+    }
 
-                    document.markOcrAsProcessed(ocrText);
-                    documentRepository.save(document);
+    // Without OCR, an oversized image is still optimized after commit; with OCR, processRequestedOcr does it
+    private void requestImageOptimization(Document document, User user) {
+        if (imageOptimizationService.isEnabledFor(user) && imageOptimizationService.isCandidate(document.getFileAttachment())) {
+            outboxService.publish(OutboxEvent.IMAGE_OPTIMIZATION_REQUESTED, user.getId(), document.getId());
+        }
+    }
 
-                    logger.info("OCR processed asynchronously for document {}: {} characters extracted",
-                            document.getId(), ocrText != null ? ocrText.length() : 0);
-                }
-            } catch (Exception e) {
-                logger.error("Error in async OCR processing for document {}: {}", document.getId(), e.getMessage(), e);
+    /**
+     * Optimize the document's image for an IMAGE_OPTIMIZATION_REQUESTED outbox event.
+     * A no-op when the document is gone or its file is not an unoptimized oversized image.
+     * Runs outside a transaction, so no connection is held while the image is decoded.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void processRequestedImageOptimization(Long id, Long userId) throws IOException {
+        optimizeImage(id, userId);
+    }
+
+    private boolean optimizeImage(Long id, Long userId) throws IOException {
+        Long attachmentId = transactionTemplate.execute(status -> imageToOptimize(id, userId));
+        if (attachmentId == null || !imageOptimizationService.optimize(attachmentId, userId)) {
+            return false;
+        }
+        // Listings show the file size and type
+        queryCacheService.invalidateUser(userId);
+        return true;
+    }
+
+    // Attachment of the user's document if it is an image to optimize for them, or null
+    private Long imageToOptimize(Long id, Long userId) {
+        Document document = documentRepository.findByIdAndUserId(id, userId).orElse(null);
+        if (document == null
+                || !imageOptimizationService.isEnabledFor(document.getUser())
+                || !imageOptimizationService.isCandidate(document.getFileAttachment())) {
+            return null;
+        }
+        return document.getFileAttachment().getId();
+    }
+
+    // Timed by ImageOptimizationService, so OCR time of optimized images can be compared with originals
+    private String extractOcrText(FileAttachment attachment) throws IOException {
+        try (LocalFile file = fileStorageService.openLocalFile(attachment)) {
+            long start = System.nanoTime();
+            String ocrText = ocrService.extractOcrFromFilePath(file.getPath(), attachment.getContentType());
+            imageOptimizationService.recordOcrTime(attachment, System.nanoTime() - start);
+            return ocrText;
+        }
+    }
+
+    /**
+     * Run OCR for an OCR_REQUESTED outbox event. Events can be delivered more than once,
+     * so this is a no-op when the document is gone, already processed or not OCR-able.
+     * OCR runs outside a transaction; the results are stored in a short one, unless the
+     * document got another file meanwhile (which brings its own OCR request).
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void processRequestedOcr(Long id, Long userId) throws IOException {
+        FileAttachment attachment = transactionTemplate.execute(status -> attachmentToOcr(id, userId));
+        if (attachment == null) {
+            return;
+        }
+
+        // OCR reads the optimized image if the file is an oversized one
+        if (optimizeImage(id, userId)) {
+            attachment = transactionTemplate.execute(status -> attachmentToOcr(id, userId));
+            if (attachment == null) {
+                return;
             }
+        }
+        String ocrText = extractOcrText(attachment);
+
+        String contentHash = attachment.getContentHash();
+        Boolean stored = transactionTemplate.execute(status -> {
+            FileAttachment current = attachmentToOcr(id, userId);
+            if (current == null || !Objects.equals(contentHash, current.getContentHash())) {
+                return false;
+            }
+            storeOcrResults(current.getDocument(), userId, ocrText);
+            return true;
         });
+
+        if (Boolean.TRUE.equals(stored)) {
+            logger.info("OCR processed asynchronously for document {}: {} characters extracted",
+                    id, ocrText != null ? ocrText.length() : 0);
+        }
+    }
+
+    // Attachment of the user's document if it still needs OCR, or null
+    private FileAttachment attachmentToOcr(Long id, Long userId) {
+        Document document = documentRepository.findByIdAndUserId(id, userId).orElse(null);
+        if (document == null
+                || document.getFileAttachment() == null || Boolean.TRUE.equals(document.getOcrProcessed())
+                || !ocrService.isOcrSupported(document.getFileAttachment().getContentType())) {
+            return null;
+        }
+        return document.getFileAttachment();
+    }
+
+    private Document storeOcrResults(Document document, Long userId, String ocrText) {
+        DocumentState before = DocumentState.of(document);
+        document.markOcrAsProcessed();
+        Document savedDocument = documentRepository.save(document);
+        userStatsService.documentChanged(userId, before, DocumentState.of(savedDocument));
+        ocrTextRepository.save(new DocumentOcrText(document.getId(), userId, ocrText));
+        ocrTextIndexService.textChanged(userId, document.getId());
+        duplicateDetectionService.updateSignature(userId, document.getId(), ocrText);
+        queryCacheService.invalidateUser(userId);
+        return savedDocument;
     }
 
+    private void clearOcrResults(Document document, Long userId) {
+        document.resetOcrStatus();
+        ocrTextRepository.deleteByDocumentIdAndUserId(document.getId(), userId);
+        ocrTextIndexService.textChanged(userId, document.getId());
+        duplicateDetectionService.removeSignature(document.getId());
+    }
+
+    // OCR text is not included; it is served separately by getOcrText
     private DocumentResponse convertToResponse(Document document) {
         FileAttachment fileAttachment = document.getFileAttachment();
         boolean hasFile = fileAttachment != null;
@@ -275,10 +612,34 @@ public class DocumentService {
                 hasFile ? fileAttachment.getContentType() : null,
                 hasFile ? fileAttachment.getFileSize() : null,
                 hasFile ? fileAttachment.getUploadedAt() : null,
-                document.getOcrText(),
+                null,
                 document.getOcrProcessed() != null ? document.getOcrProcessed() : false,
                 document.getOcrProcessedAt(),
                 ocrSupported
         );
     }
-}
\ No newline at end of file
+
+    private DocumentResponse convertToResponse(DocumentSummary summary) {
+        boolean hasFile = summary.hasFile();
+        boolean ocrSupported = hasFile && ocrService.isOcrSupported(summary.getContentType());
+
+        return new DocumentResponse(
+                summary.getId(),
+                summary.getTitle(),
+                summary.getNumber(),
+                summary.getDate(),
+                summary.getDescription(),
+                summary.getCreatedAt(),
+                summary.getUpdatedAt(),
+                hasFile,
+                summary.getOriginalFilename(),
+                summary.getContentType(),
+                summary.getFileSize(),
+                summary.getUploadedAt(),
+                null,
+                summary.getOcrProcessed() != null ? summary.getOcrProcessed() : false,
+                summary.getOcrProcessedAt(),
+                ocrSupported
+        );
+    }
+}
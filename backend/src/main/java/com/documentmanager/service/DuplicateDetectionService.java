@@ -0,0 +1,104 @@
+package com.documentmanager.service;
+
+import com.documentmanager.dto.SimilarDocumentResponse;
+import com.documentmanager.entity.Document;
+import com.documentmanager.entity.DocumentSignature;
+import com.documentmanager.entity.SignatureBucket;
+import com.documentmanager.repository.DocumentRepository;
+import com.documentmanager.repository.DocumentSignatureRepository;
+import com.documentmanager.repository.SignatureBucketRepository;
+import com.documentmanager.util.MinHash;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Near-duplicate detection over OCR text using MinHash signatures and LSH buckets.
+ * A lookup only touches documents that share a bucket, never the whole corpus.
+ */
+@Service
+@Transactional
+public class DuplicateDetectionService {
+
+    @Value("${duplicates.similarity-threshold:0.8}")
+    private double similarityThreshold;
+
+    @Autowired
+    private DocumentSignatureRepository signatureRepository;
+
+    @Autowired
+    private SignatureBucketRepository bucketRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    /**
+     * Compute and store the signature of a document's OCR text, replacing any previous one.
+     */
+    public void updateSignature(Long userId, Long documentId, String ocrText) {
+        removeSignature(documentId);
+
+        int[] signature = MinHash.signature(ocrText);
+        if (signature == null) {
+            return;
+        }
+
+        signatureRepository.save(new DocumentSignature(documentId, userId, MinHash.toBytes(signature)));
+        List<SignatureBucket> buckets = new ArrayList<>(MinHash.BANDS);
+        for (long key : MinHash.bandKeys(signature)) {
+            buckets.add(new SignatureBucket(userId, documentId, key));
+        }
+        bucketRepository.saveAll(buckets);
+    }
+
+    public void removeSignature(Long documentId) {
+        bucketRepository.deleteByDocumentId(documentId);
+        if (signatureRepository.existsById(documentId)) {
+            signatureRepository.deleteById(documentId);
+        }
+    }
+
+    /**
+     * Documents of the same user whose estimated similarity reaches the threshold, most similar first.
+     */
+    @Transactional(readOnly = true)
+    public List<SimilarDocumentResponse> findSimilar(Long userId, Long documentId) {
+        DocumentSignature own = signatureRepository.findById(documentId).orElse(null);
+        if (own == null) {
+            return new ArrayList<>();
+        }
+        int[] signature = MinHash.fromBytes(own.getSignature());
+
+        List<Long> keys = new ArrayList<>(MinHash.BANDS);
+        for (long key : MinHash.bandKeys(signature)) {
+            keys.add(key);
+        }
+        List<Long> candidateIds = bucketRepository.findCandidateDocumentIds(userId, keys, documentId);
+        if (candidateIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Double> similarities = new HashMap<>();
+        for (DocumentSignature candidate : signatureRepository.findAllById(candidateIds)) {
+            double similarity = MinHash.similarity(signature, MinHash.fromBytes(candidate.getSignature()));
+            if (similarity >= similarityThreshold) {
+                similarities.put(candidate.getDocumentId(), similarity);
+            }
+        }
+
+        List<SimilarDocumentResponse> result = new ArrayList<>();
+        for (Document document : documentRepository.findAllById(similarities.keySet())) {
+            result.add(new SimilarDocumentResponse(document.getId(), document.getTitle(), document.getNumber(),
+                    similarities.get(document.getId())));
+        }
+        result.sort(Comparator.comparingDouble(SimilarDocumentResponse::getSimilarity).reversed());
+        return result;
+    }
+}
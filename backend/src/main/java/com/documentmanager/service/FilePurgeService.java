@@ -0,0 +1,187 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.FileTombstone;
+import com.documentmanager.repository.FileBlobRepository;
+import com.documentmanager.repository.FileTombstoneRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes stored files in the background.
+ *
+ * Writers call {@link #release} instead of deleting the file. It drops the attachment's
+ * blob reference and, for the last reference, records the file in file_tombstones within
+ * their transaction. The purger claims due tombstones in a short transaction (FOR UPDATE
+ * SKIP LOCKED plus a lease), deletes the files at no more than file-purge.max-per-second,
+ * and then drops the tombstones of the deleted files. Plain files are deleted outside any
+ * transaction; a blob is deleted under its row lock, and only if it is still unreferenced,
+ * so a concurrent upload of the same content cannot lose its file. Failures are retried
+ * with exponential backoff up to file-purge.max-attempts; tombstones that give up are kept
+ * for inspection.
+ */
+@Service
+public class FilePurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePurgeService.class);
+
+    // Keeps the old file around for downloads that resolved its path just before the change
+    @Value("${file-purge.delay-seconds:60}")
+    private int delaySeconds;
+
+    @Value("${file-purge.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file-purge.max-per-second:50}")
+    private int maxPerSecond;
+
+    @Value("${file-purge.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${file-purge.lease-seconds:300}")
+    private int leaseSeconds;
+
+    @Autowired
+    private FileTombstoneRepository fileTombstoneRepository;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter purged;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        purged = meterRegistry.counter("documents.files.purged");
+        failed = meterRegistry.counter("documents.files.purge_failed");
+    }
+
+    /**
+     * Release the attachment's file. A blob is scheduled for deletion when its last
+     * reference goes; files stored before deduplication are scheduled right away.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(FileAttachment fileAttachment, Long userId) {
+        String contentHash = fileAttachment.getContentHash();
+        if (contentHash != null) {
+            fileBlobRepository.releaseReference(contentHash);
+            if (fileBlobRepository.findRefCount(contentHash).orElse(0) > 0) {
+                return;
+            }
+        }
+        Long documentId = fileAttachment.getDocument() != null ? fileAttachment.getDocument().getId() : null;
+        fileTombstoneRepository.save(new FileTombstone(fileAttachment.getFilePath(), contentHash, userId,
+                documentId, LocalDateTime.now().plusSeconds(delaySeconds)));
+    }
+
+    /**
+     * Schedule a single stored file for deletion once the current transaction commits,
+     * regardless of blob references (e.g. the old copy of a file that was moved).
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void schedule(String filePath, Long userId, Long documentId) {
+        fileTombstoneRepository.save(new FileTombstone(filePath, null, userId, documentId,
+                LocalDateTime.now().plusSeconds(delaySeconds)));
+    }
+
+    /**
+     * Schedule a blob that lost its last reference outside of release (a corrected
+     * reference count). Deleted only if it is still unreferenced by then.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void scheduleBlob(String contentHash, String filePath) {
+        fileTombstoneRepository.save(new FileTombstone(filePath, contentHash, null, null,
+                LocalDateTime.now().plusSeconds(delaySeconds)));
+    }
+
+    @Scheduled(fixedDelayString = "${file-purge.poll-interval-ms:10000}")
+    public void purge() {
+        List<FileTombstone> batch;
+        do {
+            batch = transactionTemplate.execute(status -> claimBatch());
+            if (!batch.isEmpty()) {
+                List<FileTombstone> done = new ArrayList<>();
+                List<FileTombstone> retry = new ArrayList<>();
+                for (FileTombstone tombstone : batch) {
+                    (deleteFile(tombstone) ? done : retry).add(tombstone);
+                }
+                transactionTemplate.executeWithoutResult(status -> {
+                    fileTombstoneRepository.deleteAllInBatch(done);
+                    fileTombstoneRepository.saveAll(retry);
+                });
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private List<FileTombstone> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<FileTombstone> batch = fileTombstoneRepository.findPurgeable(now, maxAttempts, PageRequest.of(0, batchSize));
+        for (FileTombstone tombstone : batch) {
+            tombstone.claim(now.plusSeconds(leaseSeconds));
+        }
+        return batch;
+    }
+
+    private boolean deleteFile(FileTombstone tombstone) {
+        throttle();
+        try {
+            // A file that is already gone counts as deleted, so a repeated purge is harmless
+            if (tombstone.getContentHash() != null) {
+                fileStorageService.deleteBlobIfUnreferenced(tombstone.getContentHash());
+            } else {
+                fileStorageService.deleteFile(tombstone.getFilePath());
+            }
+            purged.increment();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // 2, 4, 8 ... seconds, capped at an hour
+            long backoff = Math.min(3600, 1L << Math.min(tombstone.getAttempts() + 1, 12));
+            tombstone.markFailed(e.getMessage(), LocalDateTime.now().plusSeconds(backoff));
+            failed.increment();
+            if (tombstone.getAttempts() >= maxAttempts) {
+                logger.error("Giving up on deleting {} after {} attempts: {}", tombstone.getFilePath(),
+                        tombstone.getAttempts(), e.getMessage());
+            } else {
+                logger.warn("Could not delete {}, retrying in {} s: {}", tombstone.getFilePath(), backoff, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    // Spreads deletes evenly so a large purge does not saturate the disk
+    private void throttle() {
+        if (maxPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(1000L / maxPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,15 +6,44 @@ import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 
 public interface FileStorageService {
 
     /**
-     * Store a file and create a FileAttachment entity
+     * Store a file and create a FileAttachment entity. Content already stored is not
+     * written again; the attachment takes a reference to the existing blob. Must run in a
+     * transaction, which the reference belongs to.
      */
     FileAttachment storeFile(MultipartFile file, Document document) throws IOException;
 
+    /**
+     * Store a file read from a stream (e.g. a ZIP entry) without buffering it in memory.
+     * The stream is read to its end but not closed. Must run in a transaction.
+     */
+    FileAttachment storeFile(InputStream inputStream, String originalFilename, String contentType,
+                             Document document) throws IOException;
+
+    /**
+     * Hash a file that was already written to the staging directory (see getStagingPath),
+     * and compress it if its content is not stored yet. Reads the whole file, so call it
+     * before the transaction that stores it. Close the result when done.
+     */
+    StagedBlob prepareStagedFile(Path stagedFile, String contentType) throws IOException;
+
+    /**
+     * Store a prepared staged file, moving it into place rather than copying it. The staged
+     * file is gone afterwards, unless storing fails. Must run in a transaction.
+     */
+    FileAttachment storeStagedFile(StagedBlob blob, String originalFilename, String contentType,
+                                   Document document) throws IOException;
+
+    /**
+     * Path for a file in the staging directory, on the same file system as the stored files
+     */
+    Path getStagingPath(String name);
+
     /**
      * Load a file as a Resource for download
      */
@@ -26,10 +55,35 @@ public interface FileStorageService {
     void deleteFile(FileAttachment fileAttachment) throws IOException;
 
     /**
-     * Get the file path for OCR processing
+     * Delete a stored file by its path; a file that no longer exists is not an error
+     */
+    void deleteFile(String filePath) throws IOException;
+
+    /**
+     * Delete a blob and its file if no attachment references it any more
+     */
+    void deleteBlobIfUnreferenced(String contentHash) throws IOException;
+
+    /**
+     * Get the path of the stored file, which may be compressed (see getContentEncoding)
      */
     Path getFilePath(FileAttachment fileAttachment) throws IOException;
 
+    /**
+     * Content-Encoding of the stored file ("gzip"), or null if it is stored as uploaded
+     */
+    String getContentEncoding(FileAttachment fileAttachment);
+
+    /**
+     * The original content as a stream, decompressed if the file is stored compressed
+     */
+    InputStream openStream(FileAttachment fileAttachment) throws IOException;
+
+    /**
+     * The original content as a local file for OCR processing; close it when done
+     */
+    LocalFile openLocalFile(FileAttachment fileAttachment) throws IOException;
+
     /**
      * Initialize storage location
      */
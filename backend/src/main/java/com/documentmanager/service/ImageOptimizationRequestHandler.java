@@ -0,0 +1,48 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.OutboxEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Optimizes oversized images for IMAGE_OPTIMIZATION_REQUESTED outbox events on the OCR
+ * executor, which is sized for this kind of CPU-bound work. The event is completed when
+ * the optimization has finished; a failure makes the relay retry it later, and a full
+ * executor queue makes it offer the event again without counting an attempt. Until then
+ * the original stays in place, which is always a valid state.
+ */
+@Component
+public class ImageOptimizationRequestHandler implements OutboxEventHandler {
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    @Qualifier("ocrTaskExecutor")
+    private Executor ocrTaskExecutor;
+
+    @Override
+    public String getEventType() {
+        return OutboxEvent.IMAGE_OPTIMIZATION_REQUESTED;
+    }
+
+    @Override
+    public void handle(OutboxEvent event) {
+        try {
+            documentService.processRequestedImageOptimization(event.getDocumentId(), event.getUserId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> handleAsync(OutboxEvent event) {
+        return CompletableFuture.runAsync(() -> handle(event), ocrTaskExecutor);
+    }
+}
@@ -0,0 +1,245 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.FileAttachmentRepository;
+import com.documentmanager.util.ImageNormalizer;
+import com.documentmanager.util.ImageNormalizer.ImageInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaces oversized image attachments with an upright, 8-bit sRGB or gray copy scaled down
+ * to image.optimize.max-dpi over a page of image.optimize.page-long-edge-inches (or to
+ * max-dpi of the resolution recorded in the file, if that is higher). Runs after commit from
+ * the outbox, before OCR when OCR was requested, so neither the upload request nor OCR pays
+ * for the full-size image. The optimized copy replaces the original, which is released like
+ * any replaced file; original_file_size keeps the uploaded size.
+ *
+ * Enabled by image.optimize.enabled, overridden per user by users.optimize_images.
+ * Reports documents.images.* (bytes in, out and saved, time) and documents.ocr.duration
+ * tagged by source, which shows the OCR time of optimized images against originals.
+ */
+@Service
+public class ImageOptimizationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageOptimizationService.class);
+
+    private static final Set<String> IMAGE_TYPES = Set.of(
+            "image/jpeg", "image/jpg", "image/png", "image/gif", "image/bmp", "image/tiff", "image/tif");
+
+    // Rescaling by less than this is not worth a generation of JPEG loss
+    private static final double MIN_SCALE_STEP = 0.9;
+
+    @Value("${image.optimize.enabled:false}")
+    private boolean enabled;
+
+    // Smaller files are left alone, including their orientation
+    @Value("${image.optimize.min-size:1048576}")
+    private long minSize;
+
+    @Value("${image.optimize.max-dpi:300}")
+    private int maxDpi;
+
+    // Long edge of the largest page expected in a photo (A4)
+    @Value("${image.optimize.page-long-edge-inches:11.69}")
+    private double pageLongEdgeInches;
+
+    @Value("${image.optimize.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    // Keep a downscaled copy only if it is at least this much smaller
+    @Value("${image.optimize.min-saving:0.1}")
+    private double minSaving;
+
+    // Larger images are not decoded at all
+    @Value("${image.optimize.max-pixels:200000000}")
+    private long maxPixels;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FilePurgeService filePurgeService;
+
+    @Autowired
+    private FileAttachmentRepository fileAttachmentRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter optimized;
+    private Counter skipped;
+    private Counter bytesIn;
+    private Counter bytesOut;
+    private Counter bytesSaved;
+    private Timer optimizeTime;
+
+    @PostConstruct
+    public void init() {
+        optimized = meterRegistry.counter("documents.images.optimized");
+        skipped = meterRegistry.counter("documents.images.skipped");
+        bytesIn = meterRegistry.counter("documents.images.bytes_in");
+        bytesOut = meterRegistry.counter("documents.images.bytes_out");
+        bytesSaved = meterRegistry.counter("documents.images.bytes_saved");
+        optimizeTime = meterRegistry.timer("documents.images.optimize_time");
+    }
+
+    public boolean isEnabledFor(User user) {
+        return user.getOptimizeImages() != null ? user.getOptimizeImages() : enabled;
+    }
+
+    /**
+     * Whether the attachment is an image large enough to look at, and not optimized yet.
+     */
+    public boolean isCandidate(FileAttachment attachment) {
+        return attachment != null
+                && attachment.getOriginalFileSize() == null
+                && attachment.getFileSize() >= minSize
+                && attachment.getContentType() != null
+                && IMAGE_TYPES.contains(attachment.getContentType().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Replace the attachment's file with its optimized version. The image is decoded and
+     * encoded into a staging file outside any transaction; only the swap locks the attachment
+     * row, and it re-checks that the row still holds the same unoptimized file, so a
+     * concurrent worker or upload for the same document is seen. Returns true if the
+     * attachment changed.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public boolean optimize(Long attachmentId, Long userId) throws IOException {
+        FileAttachment attachment = transactionTemplate.execute(
+                status -> fileAttachmentRepository.findById(attachmentId).orElse(null));
+        if (!isCandidate(attachment)) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        long size = attachment.getFileSize();
+        Path optimizedFile = null;
+        try {
+            String contentType;
+            try (LocalFile file = fileStorageService.openLocalFile(attachment)) {
+                ImageInfo info = ImageNormalizer.inspect(file.getPath());
+                if (info == null || info.getPages() != 1 || (long) info.getWidth() * info.getHeight() > maxPixels) {
+                    skipped.increment();
+                    return false;
+                }
+                double scale = scaleFor(info);
+                if (scale == 1 && info.getOrientation() == 1 && info.isStandardColor()) {
+                    skipped.increment();
+                    return false;
+                }
+                optimizedFile = Files.createTempFile(fileStorageService.getStagingPath(""), "image-", ".tmp");
+                contentType = ImageNormalizer.normalize(file.getPath(), info, scale, jpegQuality, optimizedFile);
+                // Only turning or converting an image must not make it larger; downscaling must be worth it
+                long limit = scale < 1 ? (long) (size * (1 - minSaving)) : size;
+                if (Files.size(optimizedFile) > limit) {
+                    logger.debug("Optimized image of attachment {} saved too little ({} -> {} bytes)",
+                            attachmentId, size, Files.size(optimizedFile));
+                    skipped.increment();
+                    return false;
+                }
+            }
+
+            String contentHash = attachment.getContentHash();
+            Long storedSize;
+            try (StagedBlob blob = fileStorageService.prepareStagedFile(optimizedFile, contentType)) {
+                storedSize = transactionTemplate.execute(status -> swap(attachmentId, contentHash, blob, contentType, userId));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (storedSize == null) {
+                logger.debug("Attachment {} changed while its image was optimized", attachmentId);
+                skipped.increment();
+                return false;
+            }
+
+            optimized.increment();
+            bytesIn.increment(size);
+            bytesOut.increment(storedSize);
+            bytesSaved.increment(size - storedSize);
+            logger.info("Optimized image of attachment {}: {} -> {} bytes", attachmentId, size, storedSize);
+            return true;
+        } finally {
+            optimizeTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (optimizedFile != null) {
+                Files.deleteIfExists(optimizedFile);
+            }
+        }
+    }
+
+    /**
+     * Record how long OCR of the attachment took, by source: pdf, image or optimized_image.
+     */
+    public void recordOcrTime(FileAttachment attachment, long nanos) {
+        String source = attachment.getOriginalFileSize() != null ? "optimized_image"
+                : attachment.getContentType().toLowerCase(Locale.ROOT).startsWith("image/") ? "image" : "pdf";
+        meterRegistry.timer("documents.ocr.duration", "source", source).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Size of the stored copy, or null if the attachment no longer holds the file that was optimized
+    private Long swap(Long attachmentId, String contentHash, StagedBlob optimizedFile, String contentType, Long userId) {
+        FileAttachment attachment = fileAttachmentRepository.findByIdForUpdate(attachmentId).orElse(null);
+        if (!isCandidate(attachment) || !Objects.equals(contentHash, attachment.getContentHash())) {
+            return null;
+        }
+        try {
+            FileAttachment stored = fileStorageService.storeStagedFile(optimizedFile,
+                    renamed(attachment.getOriginalFilename(), contentType), contentType, attachment.getDocument());
+            // Releases the original's blob; read before the attachment is pointed at the new one
+            filePurgeService.release(attachment, userId);
+            attachment.setOriginalFileSize(attachment.getFileSize());
+            attachment.setOriginalFilename(stored.getOriginalFilename());
+            attachment.setStoredFilename(stored.getStoredFilename());
+            attachment.setContentType(stored.getContentType());
+            attachment.setFileSize(stored.getFileSize());
+            attachment.setFilePath(stored.getFilePath());
+            attachment.setContentHash(stored.getContentHash());
+            return stored.getFileSize();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private double scaleFor(ImageInfo info) {
+        double scale = maxDpi * pageLongEdgeInches / Math.max(info.getWidth(), info.getHeight());
+        // Scans record their resolution; phone photos usually claim 72 dpi, which is ignored here
+        if (info.getDpi() > maxDpi) {
+            scale = Math.min(scale, maxDpi / info.getDpi());
+        }
+        return scale < MIN_SCALE_STEP ? scale : 1;
+    }
+
+    // PNG output gets a matching extension; JPEG stays JPEG
+    private String renamed(String filename, String contentType) {
+        if (!"image/png".equals(contentType) || filename.toLowerCase(Locale.ROOT).endsWith(".png")) {
+            return filename;
+        }
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0 ? filename.substring(0, dot) : filename) + ".png";
+    }
+}
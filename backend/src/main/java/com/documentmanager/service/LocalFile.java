@@ -0,0 +1,31 @@
+package com.documentmanager.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The original content of a stored file as a file on local disk, for tools that need a
+ * path (OCR). For a compressed blob it is a temporary decompressed copy, deleted on close.
+ */
+public class LocalFile implements Closeable {
+    private final Path path;
+    private final boolean temporary;
+
+    public LocalFile(Path path, boolean temporary) {
+        this.path = path;
+        this.temporary = temporary;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+}
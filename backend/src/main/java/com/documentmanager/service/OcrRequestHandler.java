@@ -0,0 +1,47 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.OutboxEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Starts OCR for OCR_REQUESTED outbox events on the OCR executor, so the relay is never
+ * blocked by OCR itself. The event is completed when OCR has finished; a failure makes
+ * the relay retry it later. A full executor queue (RejectedExecutionException) makes the
+ * relay pause and offer the event again without counting an attempt.
+ */
+@Component
+public class OcrRequestHandler implements OutboxEventHandler {
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    @Qualifier("ocrTaskExecutor")
+    private Executor ocrTaskExecutor;
+
+    @Override
+    public String getEventType() {
+        return OutboxEvent.OCR_REQUESTED;
+    }
+
+    @Override
+    public void handle(OutboxEvent event) {
+        try {
+            documentService.processRequestedOcr(event.getDocumentId(), event.getUserId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> handleAsync(OutboxEvent event) {
+        return CompletableFuture.runAsync(() -> handle(event), ocrTaskExecutor);
+    }
+}
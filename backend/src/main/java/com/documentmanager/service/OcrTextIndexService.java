@@ -0,0 +1,280 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.DocumentOcrTextRepository;
+import com.documentmanager.util.FuzzyTermDictionary;
+import com.documentmanager.util.TextNormalizer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory per-user inverted index over folded OCR terms, used for typo-tolerant search.
+ *
+ * A user's index is built in the background on their first fuzzy search, reading the
+ * texts in keyset batches; until it is ready, fuzzySearch returns null and the caller
+ * answers with the exact search. Every change of a document's OCR text increments
+ * ocr_index_versions and records the document under the new version in
+ * ocr_index_changes, in the same transaction. Each search compares that version with the
+ * local index's and first re-reads the documents changed since, so every instance sees
+ * every change, whichever made it. Only an index more than ocr-index.max-changes behind,
+ * or older than the retained changes, is rebuilt.
+ *
+ * Indexes are kept in a Caffeine cache bounded by ocr-index.max-postings (document/term
+ * pairs over all users) and dropped after ocr-index.idle-minutes without a search.
+ * Reported as cache metrics under the name ocr_term_index.
+ */
+@Service
+public class OcrTextIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OcrTextIndexService.class);
+
+    @Value("${ocr-index.max-postings:20000000}")
+    private long maxPostings;
+
+    @Value("${ocr-index.idle-minutes:30}")
+    private long idleMinutes;
+
+    @Value("${ocr-index.build-batch-size:1000}")
+    private int buildBatchSize;
+
+    @Value("${ocr-index.max-changes:5000}")
+    private int maxChanges;
+
+    @Value("${ocr-index.change-retention-hours:24}")
+    private int changeRetentionHours;
+
+    @Autowired
+    private DocumentOcrTextRepository ocrTextRepository;
+
+    @Autowired
+    @Qualifier("searchIndexExecutor")
+    private Executor searchIndexExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<Long, UserIndex> indexes;
+
+    // Users whose index is being built, so a burst of searches starts one build
+    private final Set<Long> building = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        indexes = Caffeine.newBuilder()
+                .maximumWeight(maxPostings)
+                .weigher((Long userId, UserIndex index) -> (int) Math.min(Integer.MAX_VALUE, index.postings))
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "ocr_term_index");
+    }
+
+    /**
+     * Ids of the user's documents whose OCR text contains every term of the query,
+     * each within an edit distance that grows with the term length. Returns null while
+     * the user's index is missing or outdated; a build is started in the background.
+     */
+    public Set<Long> fuzzySearch(User user, String query) {
+        List<String> terms = TextNormalizer.tokenize(query);
+        if (terms.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        long version = ocrTextRepository.findIndexVersion(user.getId());
+        UserIndex index = indexes.getIfPresent(user.getId());
+        if (index == null || !catchUp(user, index, version)) {
+            startBuild(user, version);
+            return null;
+        }
+
+        // Changes are applied under the write lock, so concurrent searches share the read lock
+        index.lock.readLock().lock();
+        try {
+            Set<Long> result = null;
+            for (String term : terms) {
+                Set<Long> matches = index.dictionary.search(term, maxDistance(term));
+                if (result == null) {
+                    result = matches;
+                } else {
+                    result.retainAll(matches);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record that the OCR text of the user's document changed or was removed; indexes
+     * re-read the document on their next search. Must run in the transaction that changes the text.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void textChanged(Long userId, Long documentId) {
+        ocrTextRepository.recordTextChange(userId, documentId, LocalDateTime.now());
+    }
+
+    @Scheduled(cron = "${ocr-index.cleanup-cron:0 45 3 * * *}")
+    @Transactional
+    public void deleteOldTextChanges() {
+        int deleted = ocrTextRepository.deleteTextChangesBefore(LocalDateTime.now().minusHours(changeRetentionHours));
+        logger.info("Deleted {} OCR text changes", deleted);
+    }
+
+    // 0 edits for very short terms, 1 for short ones, 2 otherwise (e.g. "rn" read for "m")
+    static int maxDistance(String term) {
+        if (term.length() <= 2) {
+            return 0;
+        }
+        if (term.length() <= 4) {
+            return 1;
+        }
+        return 2;
+    }
+
+    private void startBuild(User user, long version) {
+        Long userId = user.getId();
+        if (!building.add(userId)) {
+            return;
+        }
+        try {
+            searchIndexExecutor.execute(() -> {
+                try {
+                    indexes.put(userId, buildIndex(user, version));
+                } catch (RuntimeException e) {
+                    logger.warn("Could not build the OCR term index for user {}: {}", userId, e.getMessage());
+                } finally {
+                    building.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Tried again on the next search
+            building.remove(userId);
+        }
+    }
+
+    // Re-reads the documents changed since the index's version; false if the index has to be rebuilt
+    private boolean catchUp(User user, UserIndex index, long version) {
+        if (index.version >= version) {
+            return true;
+        }
+        index.lock.writeLock().lock();
+        try {
+            if (index.version >= version) {
+                return true; // caught up by a concurrent search
+            }
+            if (version - index.version > maxChanges) {
+                return false;
+            }
+            List<Long> changed = ocrTextRepository.findChangedDocumentIds(user.getId(), index.version, version);
+            if (changed.size() != version - index.version) {
+                return false; // some changes were deleted already
+            }
+            Set<Long> documentIds = new HashSet<>(changed);
+            Map<Long, String> texts = new HashMap<>();
+            for (Object[] row : ocrTextRepository.findOcrTextByUserAndDocumentIdIn(user, documentIds)) {
+                texts.put((Long) row[0], (String) row[1]);
+            }
+            for (Long documentId : documentIds) {
+                index.remove(documentId);
+                String text = texts.get(documentId);
+                if (text != null) {
+                    index.add(documentId, text);
+                }
+            }
+            index.version = version;
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+        // Weighed again, since the number of postings changed
+        indexes.asMap().replace(user.getId(), index, index);
+        return true;
+    }
+
+    // The version is read before the texts; documents changed during the build are re-read by the
+    // next search, which is harmless for those read in their new state already
+    private UserIndex buildIndex(User user, long version) {
+        long start = System.currentTimeMillis();
+        UserIndex index = new UserIndex(version);
+        long afterId = 0;
+        List<Object[]> batch;
+        do {
+            batch = ocrTextRepository.findOcrTextByUserAfter(user, afterId, PageRequest.of(0, buildBatchSize));
+            for (Object[] row : batch) {
+                afterId = (Long) row[0];
+                index.add(afterId, (String) row[1]);
+            }
+        } while (batch.size() == buildBatchSize);
+        logger.info("Built OCR term index for user {}: {} documents, {} terms in {} ms", user.getId(),
+                index.documents, index.dictionary.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private static final class UserIndex {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final FuzzyTermDictionary dictionary = new FuzzyTermDictionary();
+        // Terms of each document, so a changed document can be taken out of the dictionary
+        private final Map<Long, String[]> termsByDocument = new HashMap<>();
+        private volatile long version;
+        private int documents;
+        private long postings;
+
+        private UserIndex(long version) {
+            this.version = version;
+        }
+
+        private void add(Long documentId, String text) {
+            Set<String> terms = new HashSet<>(TextNormalizer.tokenize(text));
+            if (terms.isEmpty()) {
+                return;
+            }
+            for (String term : terms) {
+                dictionary.add(term, documentId);
+            }
+            termsByDocument.put(documentId, terms.toArray(new String[0]));
+            documents++;
+            postings += terms.size();
+        }
+
+        private void remove(Long documentId) {
+            String[] terms = termsByDocument.remove(documentId);
+            if (terms == null) {
+                return;
+            }
+            for (String term : terms) {
+                dictionary.remove(term, documentId);
+            }
+            documents--;
+            postings -= terms.length;
+        }
+    }
+}
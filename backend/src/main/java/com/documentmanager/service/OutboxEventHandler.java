@@ -0,0 +1,26 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.OutboxEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-process consumer of outbox events. Delivery is at-least-once, so handling an
+ * event twice must be harmless. Throwing makes the relay retry the event later.
+ */
+public interface OutboxEventHandler {
+
+    String getEventType();
+
+    void handle(OutboxEvent event);
+
+    /**
+     * Start handling the event. Handlers that run slow work on an executor override this
+     * to return the work's future; the event stays leased until it completes and is
+     * retried if it completes exceptionally.
+     */
+    default CompletableFuture<Void> handleAsync(OutboxEvent event) {
+        handle(event);
+        return CompletableFuture.completedFuture(null);
+    }
+}
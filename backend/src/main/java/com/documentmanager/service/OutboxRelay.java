@@ -0,0 +1,214 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.OutboxEvent;
+import com.documentmanager.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Dispatches committed outbox events to the OutboxEventHandler beans.
+ *
+ * A batch is claimed in a short transaction (FOR UPDATE SKIP LOCKED, then a lease on
+ * available_at), handled outside any transaction, and the outcome is written back in a
+ * second short transaction. If the process dies in between, the lease expires and the
+ * events are dispatched again: delivery is at-least-once. Failed events are retried
+ * with exponential backoff up to outbox.max-attempts.
+ *
+ * Handlers that hand their work to an executor return a future (handleAsync). Such an
+ * event is re-leased for outbox.async-lease-seconds and completed, or failed, by the
+ * worker once the future finishes, so a failure or a restart before then redelivers it.
+ *
+ * An executor that rejects work because its queue is full is back-pressure, not a failure:
+ * the event and the rest of its batch are released without counting an attempt, and no
+ * further batch is claimed before the next poll.
+ */
+@Service
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    @Value("${outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${outbox.lease-seconds:60}")
+    private int leaseSeconds;
+
+    // Long enough for a queued OCR to finish; it is redelivered if the worker never reports back
+    @Value("${outbox.async-lease-seconds:1800}")
+    private int asyncLeaseSeconds;
+
+    @Value("${outbox.retention-days:7}")
+    private int retentionDays;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private List<OutboxEventHandler> handlers;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, List<OutboxEventHandler>> handlersByType = new HashMap<>();
+
+    private Counter dispatched;
+    private Counter failed;
+    private Counter deferred;
+
+    @PostConstruct
+    public void init() {
+        for (OutboxEventHandler handler : handlers) {
+            handlersByType.computeIfAbsent(handler.getEventType(), type -> new ArrayList<>()).add(handler);
+        }
+        dispatched = meterRegistry.counter("documents.outbox.dispatched");
+        failed = meterRegistry.counter("documents.outbox.failed");
+        deferred = meterRegistry.counter("documents.outbox.deferred");
+        Gauge.builder("documents.outbox.pending", outboxEventRepository, OutboxEventRepository::countPending)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:1000}")
+    public void relay() {
+        List<OutboxEvent> batch;
+        boolean saturated = false;
+        do {
+            batch = transactionTemplate.execute(status -> claimBatch());
+            if (!batch.isEmpty()) {
+                Map<OutboxEvent, CompletableFuture<Void>> running = new LinkedHashMap<>();
+                for (OutboxEvent event : batch) {
+                    CompletableFuture<Void> work = saturated ? null : dispatch(event);
+                    if (work == null || isRejected(work)) {
+                        // Lease ends now, attempts unchanged: offered again on the next poll
+                        saturated = true;
+                        event.claim(LocalDateTime.now());
+                        deferred.increment();
+                    } else if (work.isDone()) {
+                        complete(event, work);
+                    } else {
+                        event.claim(LocalDateTime.now().plusSeconds(asyncLeaseSeconds));
+                        running.put(event, work);
+                    }
+                }
+                List<OutboxEvent> outcome = batch;
+                transactionTemplate.executeWithoutResult(status -> outboxEventRepository.saveAll(outcome));
+                // Only after the batch is saved, so a fast worker's outcome is not overwritten by it
+                running.forEach((event, work) -> work.whenComplete((result, error) -> completeAsync(event, error)));
+            }
+        } while (batch.size() == batchSize && !saturated);
+    }
+
+    @Scheduled(cron = "${outbox.cleanup-cron:0 30 3 * * *}")
+    public void deleteProcessedEvents() {
+        Integer deleted = transactionTemplate.execute(status ->
+                outboxEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays)));
+        logger.info("Deleted {} processed outbox events", deleted);
+    }
+
+    private List<OutboxEvent> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> batch = outboxEventRepository.findDispatchable(now, maxAttempts, PageRequest.of(0, batchSize));
+        for (OutboxEvent event : batch) {
+            event.claim(now.plusSeconds(leaseSeconds));
+        }
+        return batch;
+    }
+
+    private CompletableFuture<Void> dispatch(OutboxEvent event) {
+        List<CompletableFuture<Void>> work = new ArrayList<>();
+        for (OutboxEventHandler handler : handlersByType.getOrDefault(event.getEventType(), List.of())) {
+            try {
+                work.add(handler.handleAsync(event));
+            } catch (RuntimeException e) {
+                work.add(CompletableFuture.failedFuture(e));
+            }
+        }
+        return CompletableFuture.allOf(work.toArray(new CompletableFuture[0]));
+    }
+
+    // An executor with a full queue rejects the work before it starts
+    private boolean isRejected(CompletableFuture<Void> work) {
+        return work.isCompletedExceptionally()
+                && unwrap(work.handle((result, e) -> e).join()) instanceof RejectedExecutionException;
+    }
+
+    private void complete(OutboxEvent event, CompletableFuture<Void> work) {
+        Throwable error = work.handle((result, e) -> e).join();
+        if (error == null) {
+            event.markProcessed();
+            dispatched.increment();
+        } else {
+            Throwable cause = unwrap(error);
+            long backoff = backoffSeconds(event.getAttempts());
+            event.markFailed(cause.getMessage(), LocalDateTime.now().plusSeconds(backoff));
+            logFailure(event, event.getAttempts(), backoff, cause);
+        }
+    }
+
+    // Runs on the worker thread; the batch entity is detached by now, so the row is updated directly
+    private void completeAsync(OutboxEvent event, Throwable error) {
+        try {
+            if (error == null) {
+                transactionTemplate.executeWithoutResult(status ->
+                        outboxEventRepository.markProcessed(event.getId(), LocalDateTime.now()));
+                dispatched.increment();
+                return;
+            }
+            Throwable cause = unwrap(error);
+            String message = cause.getMessage() != null && cause.getMessage().length() > 1000
+                    ? cause.getMessage().substring(0, 1000) : cause.getMessage();
+            long backoff = backoffSeconds(event.getAttempts());
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.markFailed(event.getId(),
+                    message, LocalDateTime.now().plusSeconds(backoff)));
+            logFailure(event, event.getAttempts() + 1, backoff, cause);
+        } catch (RuntimeException e) {
+            // The lease expires and the event is dispatched again
+            logger.warn("Could not record the outcome of outbox event {}: {}", event.getId(), e.getMessage());
+        }
+    }
+
+    // 2, 4, 8 ... seconds, capped at an hour
+    private long backoffSeconds(int attempts) {
+        return Math.min(3600, 1L << Math.min(attempts + 1, 12));
+    }
+
+    private Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void logFailure(OutboxEvent event, int attempts, long backoff, Throwable cause) {
+        failed.increment();
+        if (attempts >= maxAttempts) {
+            logger.error("Outbox event {} ({}) for document {} gave up after {} attempts: {}", event.getId(),
+                    event.getEventType(), event.getDocumentId(), attempts, cause.getMessage());
+        } else {
+            logger.warn("Outbox event {} ({}) for document {} failed, retrying in {} s: {}", event.getId(),
+                    event.getEventType(), event.getDocumentId(), backoff, cause.getMessage());
+        }
+    }
+}
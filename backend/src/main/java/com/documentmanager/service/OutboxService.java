@@ -0,0 +1,24 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.OutboxEvent;
+import com.documentmanager.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Records outbox events. Must be called inside the transaction that makes the change,
+ * so the event is committed or rolled back together with it.
+ */
+@Service
+public class OutboxService {
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String eventType, Long userId, Long documentId) {
+        outboxEventRepository.save(new OutboxEvent(eventType, userId, documentId));
+    }
+}
@@ -0,0 +1,178 @@
+package com.documentmanager.service;
+
+import com.documentmanager.config.RecentWrites;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-process LRU cache for per-user query results (list pages, searches, facets).
+ *
+ * Every key carries the user's current generation number. A write bumps the generation,
+ * so all older entries of that user stop matching at once; they are never looked up
+ * again and age out of the LRU.
+ *
+ * Generations are per instance: a write handled by another instance does not bump them
+ * here. Entries therefore also expire ttl-seconds after they were cached, which bounds how
+ * long such a write can stay invisible on this instance.
+ *
+ * The bump is also recorded in RecentWrites, before the new generation becomes visible,
+ * so the reads that refill the cache for that user go to the primary rather than a
+ * replica that may not have the write yet.
+ */
+@Service
+public class QueryCacheService {
+
+    @Value("${cache.query.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${cache.query.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RecentWrites recentWrites;
+
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private Map<CacheKey, CachedResult> entries;
+
+    @PostConstruct
+    public void init() {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedResult> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        FunctionCounter.builder("documents.query.cache.hits", hits, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("documents.query.cache.misses", misses, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("documents.query.cache.evictions", evictions, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.query.cache.size", this, QueryCacheService::size).register(meterRegistry);
+    }
+
+    /**
+     * Return the cached result for this user and query, computing and caching it on a miss.
+     * The query string must identify everything the result depends on (search, filters, pageable).
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long userId, String query, Supplier<T> loader) {
+        CacheKey key = new CacheKey(userId, currentGeneration(userId), query);
+
+        long now = System.nanoTime();
+        CachedResult cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+            if (cached != null && now - cached.cachedAt >= TimeUnit.SECONDS.toNanos(ttlSeconds)) {
+                entries.remove(key);
+                cached = null;
+            }
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (T) cached.value;
+        }
+
+        misses.incrementAndGet();
+        T result = loader.get();
+        if (result != null) {
+            synchronized (entries) {
+                entries.put(key, new CachedResult(result, now));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Invalidate all cached results of a user. Inside a transaction this happens after commit,
+     * so a concurrent reader cannot cache pre-commit data under the new generation.
+     */
+    public void invalidateUser(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpGeneration(userId);
+                }
+            });
+        } else {
+            bumpGeneration(userId);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long currentGeneration(Long userId) {
+        AtomicLong generation = generations.get(userId);
+        return generation != null ? generation.get() : 0L;
+    }
+
+    private void bumpGeneration(Long userId) {
+        recentWrites.recordWrite(userId);
+        generations.computeIfAbsent(userId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static final class CachedResult {
+        private final Object value;
+        private final long cachedAt;
+
+        private CachedResult(Object value, long cachedAt) {
+            this.value = value;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private static final class CacheKey {
+        private final Long userId;
+        private final long generation;
+        private final String query;
+
+        private CacheKey(Long userId, long generation, String query) {
+            this.userId = userId;
+            this.generation = generation;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return generation == other.generation && userId.equals(other.userId) && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, generation, query);
+        }
+    }
+}
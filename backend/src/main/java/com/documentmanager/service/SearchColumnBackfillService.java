@@ -0,0 +1,83 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.Document;
+import com.documentmanager.entity.DocumentOcrText;
+import com.documentmanager.repository.DocumentOcrTextRepository;
+import com.documentmanager.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Brings rows written by older versions up to date by filling the normalized search
+ * columns of documents and of OCR text moved out of the legacy documents.ocr_text column.
+ * Runs once in the background after startup, one batch per transaction.
+ */
+@Service
+public class SearchColumnBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchColumnBackfillService.class);
+    private static final int BATCH_SIZE = 500;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentOcrTextRepository ocrTextRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Async("ocrTaskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        backfillOcrSearchText();
+        backfillSearchColumns();
+    }
+
+    private void backfillOcrSearchText() {
+        int total = 0;
+        int updated;
+        do {
+            updated = transactionTemplate.execute(status -> {
+                List<DocumentOcrText> batch = ocrTextRepository.findBySearchTextIsNullAndTextIsNotNull(PageRequest.of(0, BATCH_SIZE));
+                batch.forEach(DocumentOcrText::updateSearchText);
+                ocrTextRepository.saveAll(batch);
+                return batch.size();
+            });
+            total += updated;
+        } while (updated == BATCH_SIZE);
+
+        if (total > 0) {
+            logger.info("Backfilled normalized OCR search text for {} documents", total);
+        }
+    }
+
+    private void backfillSearchColumns() {
+        int total = 0;
+        int updated;
+        do {
+            updated = transactionTemplate.execute(status -> {
+                List<Document> batch = documentRepository.findBySearchTextIsNull(PageRequest.of(0, BATCH_SIZE));
+                for (Document document : batch) {
+                    documentRepository.updateSearchText(document.getId(), document.getUser().getId(),
+                            Document.searchTextOf(document.getTitle(), document.getNumber(), document.getDescription()));
+                }
+                return batch.size();
+            });
+            total += updated;
+        } while (updated == BATCH_SIZE);
+
+        if (total > 0) {
+            logger.info("Backfilled normalized search columns for {} documents", total);
+        }
+    }
+}
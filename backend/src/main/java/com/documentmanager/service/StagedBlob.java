@@ -0,0 +1,49 @@
+package com.documentmanager.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A file in the staging directory, hashed and (if its content is not stored yet) compressed
+ * before the transaction that stores it, so the transaction only moves it into place. Closing
+ * it deletes the compressed copy if it was not used; the staged file is left to its owner.
+ */
+public class StagedBlob implements Closeable {
+    private final Path stagedFile;
+    private final String contentHash;
+    private final long fileSize;
+    private final Path compressedFile;
+
+    public StagedBlob(Path stagedFile, String contentHash, long fileSize, Path compressedFile) {
+        this.stagedFile = stagedFile;
+        this.contentHash = contentHash;
+        this.fileSize = fileSize;
+        this.compressedFile = compressedFile;
+    }
+
+    public Path getStagedFile() {
+        return stagedFile;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    // Null if the content is already stored or does not compress well
+    public Path getCompressedFile() {
+        return compressedFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compressedFile != null) {
+            Files.deleteIfExists(compressedFile);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.FileBlob;
+import com.documentmanager.repository.FileAttachmentRepository;
+import com.documentmanager.repository.FileBlobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes how much disk deduplication and compression save. The sums scan the attachment and blob
+ * tables, so they are refreshed on a schedule rather than on every metrics scrape.
+ */
+@Service
+public class StorageStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageStatsService.class);
+
+    @Autowired
+    private FileAttachmentRepository fileAttachmentRepository;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Size of all blob-backed attachments, of the distinct blobs, and of the blobs on disk
+    private final AtomicLong logicalBytes = new AtomicLong();
+    private final AtomicLong blobBytes = new AtomicLong();
+    private final AtomicLong physicalBytes = new AtomicLong();
+    // Part of physicalBytes held by the cold tier
+    private final AtomicLong coldBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("documents.storage.logical_bytes", logicalBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.physical_bytes", physicalBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.cold_bytes", coldBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.bytes_saved", this, StorageStatsService::getBytesSaved).register(meterRegistry);
+        Gauge.builder("documents.storage.dedupe_ratio", this, StorageStatsService::getDedupeRatio).register(meterRegistry);
+        Gauge.builder("documents.storage.stored_compression_ratio", this, StorageStatsService::getCompressionRatio)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.stats-interval-ms:300000}", initialDelayString = "${storage.stats-initial-delay-ms:30000}")
+    @Transactional(readOnly = true)
+    public void refresh() {
+        logicalBytes.set(fileAttachmentRepository.sumBlobFileSizes());
+        blobBytes.set(fileBlobRepository.sumFileSizes());
+        physicalBytes.set(fileBlobRepository.sumStoredSizes());
+        coldBytes.set(fileBlobRepository.sumStoredSizesByTier(FileBlob.TIER_COLD));
+        logger.info("Storage: {} bytes referenced, {} bytes stored ({} cold), dedupe ratio {}, compression ratio {}, {} bytes saved",
+                logicalBytes.get(), physicalBytes.get(), coldBytes.get(), String.format("%.2f", getDedupeRatio()),
+                String.format("%.2f", getCompressionRatio()), getBytesSaved());
+    }
+
+    public double getBytesSaved() {
+        return Math.max(0, logicalBytes.get() - physicalBytes.get());
+    }
+
+    // Referenced bytes per distinct byte: 1.0 means no duplicates
+    public double getDedupeRatio() {
+        long blobs = blobBytes.get();
+        return blobs > 0 ? (double) logicalBytes.get() / blobs : 1.0;
+    }
+
+    // Distinct bytes per byte on disk: 1.0 means nothing is stored compressed
+    public double getCompressionRatio() {
+        long physical = physicalBytes.get();
+        return physical > 0 ? (double) blobBytes.get() / physical : 1.0;
+    }
+}
@@ -0,0 +1,248 @@
+package com.documentmanager.service;
+
+import com.documentmanager.dto.DocumentResponse;
+import com.documentmanager.dto.UploadSessionRequest;
+import com.documentmanager.dto.UploadSessionResponse;
+import com.documentmanager.entity.UploadSession;
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads for files too large for a single multipart request.
+ *
+ * The client creates a session for a document, PUTs the file in chunks at the offset the
+ * session reports, and completes it. Each chunk is streamed from the request body straight
+ * into a staging file next to the stored files, with a fixed-size buffer, and checked
+ * against the SHA-256 the client sent for it; a chunk that does not match is cut off
+ * again. After an interruption the client asks for the session and continues from
+ * receivedBytes. Completing hashes the staging file, and compresses it if enabled, before
+ * the transaction that moves it into storage like any other upload.
+ */
+@Service
+public class UploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${upload.max-size:10737418240}")
+    private long maxSize;
+
+    @Value("${upload.session-ttl-hours:24}")
+    private int sessionTtlHours;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Serialises chunks of one session within this instance; advance() guards across instances
+    private final Map<String, Object> sessionLocks = new ConcurrentHashMap<>();
+
+    public UploadSessionResponse createSession(Long documentId, UploadSessionRequest request, User user) throws IOException {
+        if (request.getSize() > maxSize) {
+            throw new IllegalArgumentException("File exceeds the maximum upload size of " + maxSize + " bytes");
+        }
+        // Fails for documents of other users
+        documentService.getDocumentEntityById(documentId, user);
+
+        String contentType = StringUtils.hasText(request.getContentType()) ? request.getContentType() : "application/octet-stream";
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), user.getId(), documentId,
+                StringUtils.cleanPath(request.getFilename()), contentType, request.getSize(),
+                request.getSha256() != null ? request.getSha256().toLowerCase() : null,
+                LocalDateTime.now().plusHours(sessionTtlHours));
+        Files.createFile(stagingPath(session));
+        uploadSessionRepository.save(session);
+        return toResponse(session);
+    }
+
+    public UploadSessionResponse getSession(String uploadId, User user) {
+        return toResponse(findSession(uploadId, user));
+    }
+
+    /**
+     * Append one chunk. The offset must equal the session's receivedBytes; a client that
+     * lost the response to an earlier chunk gets IllegalStateException and resumes from
+     * the current offset.
+     */
+    public UploadSessionResponse writeChunk(String uploadId, long offset, String chunkSha256, InputStream body,
+                                            User user) throws IOException {
+        if (chunkSha256 == null || !chunkSha256.matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("Chunk SHA-256 header is required");
+        }
+
+        Object lock = sessionLocks.computeIfAbsent(uploadId, id -> new Object());
+        synchronized (lock) {
+            UploadSession session = findSession(uploadId, user);
+            if (offset != session.getReceivedBytes()) {
+                throw new IllegalStateException("Expected offset " + session.getReceivedBytes());
+            }
+
+            long remaining = session.getTotalSize() - offset;
+            MessageDigest digest = sha256();
+            long written;
+            try (FileChannel channel = FileChannel.open(stagingPath(session), StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.position(offset);
+                written = copy(new DigestInputStream(body, digest), Channels.newOutputStream(channel), remaining);
+                if (written < 0 || !chunkSha256.equalsIgnoreCase(HexFormat.of().formatHex(digest.digest()))) {
+                    // Leave the staging file as it was before this chunk
+                    channel.truncate(offset);
+                    throw new IllegalArgumentException(written < 0
+                            ? "Chunk extends past the declared file size" : "Chunk checksum mismatch");
+                }
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime expiresAt = now.plusHours(sessionTtlHours);
+            if (uploadSessionRepository.advance(uploadId, offset, offset + written, now, expiresAt) == 0) {
+                throw new IllegalStateException("Upload was changed concurrently");
+            }
+            UploadSessionResponse response = toResponse(session);
+            response.setReceivedBytes(offset + written);
+            response.setExpiresAt(expiresAt);
+            return response;
+        }
+    }
+
+    public DocumentResponse complete(String uploadId, User user, boolean processOcr) throws IOException {
+        UploadSession session = findSession(uploadId, user);
+        if (!session.isComplete()) {
+            throw new IllegalStateException("Upload incomplete: " + session.getReceivedBytes()
+                    + " of " + session.getTotalSize() + " bytes received");
+        }
+
+        // Reading a file of several GB takes long; a failure here keeps the session for another try
+        StagedBlob blob = fileStorageService.prepareStagedFile(stagingPath(session), session.getContentType());
+        try (blob) {
+            if (session.getSha256() != null && !session.getSha256().equalsIgnoreCase(blob.getContentHash())) {
+                throw new IllegalArgumentException("Uploaded file does not match its SHA-256");
+            }
+            DocumentResponse response = transactionTemplate.execute(status -> {
+                // Deleting the row first makes a concurrent completion of the same upload fail
+                if (uploadSessionRepository.deleteCompleted(uploadId) == 0) {
+                    throw new IllegalStateException("Upload already completed");
+                }
+                try {
+                    return documentService.attachStagedFile(session.getDocumentId(), blob, session.getFilename(),
+                            session.getContentType(), user, processOcr);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            sessionLocks.remove(uploadId);
+            return response;
+        } catch (UncheckedIOException e) {
+            // The staged file may already have been moved; the client has to start over
+            discard(session);
+            throw e.getCause();
+        } catch (IllegalArgumentException e) {
+            discard(session);
+            throw e;
+        }
+    }
+
+    public void abort(String uploadId, User user) {
+        discard(findSession(uploadId, user));
+    }
+
+    @Scheduled(fixedDelayString = "${upload.cleanup-interval-ms:3600000}")
+    public void deleteExpiredSessions() {
+        int deleted = 0;
+        for (String uploadId : uploadSessionRepository.findExpiredIds(LocalDateTime.now())) {
+            uploadSessionRepository.findById(uploadId).ifPresent(this::discard);
+            deleted++;
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} expired upload sessions", deleted);
+        }
+    }
+
+    private void discard(UploadSession session) {
+        uploadSessionRepository.deleteById(session.getId());
+        sessionLocks.remove(session.getId());
+        try {
+            Files.deleteIfExists(stagingPath(session));
+        } catch (IOException e) {
+            logger.warn("Could not delete staging file of upload {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    // Not in a read-only transaction: a replica could still show the previous offset
+    private UploadSession findSession(String uploadId, User user) {
+        return uploadSessionRepository.findById(uploadId)
+                .filter(session -> session.getUserId().equals(user.getId()))
+                .orElseThrow(() -> new RuntimeException("Upload not found"));
+    }
+
+    private Path stagingPath(UploadSession session) {
+        return fileStorageService.getStagingPath(session.getStagingName());
+    }
+
+    // Copies at most limit bytes; returns -1 if the input has more
+    private long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > limit) {
+                return -1;
+            }
+            out.write(buffer, 0, read);
+        }
+        return total;
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        UploadSessionResponse response = new UploadSessionResponse();
+        response.setUploadId(session.getId());
+        response.setDocumentId(session.getDocumentId());
+        response.setFilename(session.getFilename());
+        response.setSize(session.getTotalSize());
+        response.setReceivedBytes(session.getReceivedBytes());
+        response.setExpiresAt(session.getExpiresAt());
+        return response;
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
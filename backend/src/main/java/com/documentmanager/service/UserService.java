@@ -2,8 +2,13 @@ package com.documentmanager.service;
 
 import com.documentmanager.entity.User;
 import com.documentmanager.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
 
 @Service
 public class UserService {
@@ -11,11 +16,24 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Transactional(readOnly = true)
     public User findByUsername(String username) {
-        return userRepository.findByUsername(username)
+        return findOptionalByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
     }
 
+    // Natural-id load: after the first hit the user comes from the second-level cache
+    // instead of a SELECT on every authenticated request
+    @Transactional(readOnly = true)
+    public Optional<User> findOptionalByUsername(String username) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(username);
+    }
+
     public User findByEmail(String email) {
         return userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("User not found: " + email));
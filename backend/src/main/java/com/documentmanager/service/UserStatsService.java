@@ -0,0 +1,148 @@
+package com.documentmanager.service;
+
+import com.documentmanager.entity.Document;
+import com.documentmanager.entity.User;
+import com.documentmanager.entity.UserStats;
+import com.documentmanager.repository.DocumentRepository;
+import com.documentmanager.repository.UserRepository;
+import com.documentmanager.repository.UserStatsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maintains the per-user counters in user_stats.
+ *
+ * Writers report each document's state before and after a change and the difference is
+ * applied in the same transaction. A periodic reconciliation recounts every user under
+ * a row lock and corrects any drift (e.g. from rows changed outside the application).
+ */
+@Service
+@Transactional
+public class UserStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStatsService.class);
+
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * How a document contributes to the counters. ABSENT is used for the "before" of a
+     * create and the "after" of a delete.
+     */
+    public enum DocumentState {
+        ABSENT(0, 0, 0),
+        NO_OCR(1, 0, 0),
+        PENDING(1, 0, 1),
+        PROCESSED(1, 1, 0);
+
+        private final int documents;
+        private final int processed;
+        private final int pending;
+
+        DocumentState(int documents, int processed, int pending) {
+            this.documents = documents;
+            this.processed = processed;
+            this.pending = pending;
+        }
+
+        public static DocumentState of(Document document) {
+            if (Boolean.TRUE.equals(document.getOcrProcessed())) {
+                return PROCESSED;
+            }
+            if (Boolean.FALSE.equals(document.getOcrProcessed()) && document.getFileAttachment() != null) {
+                return PENDING;
+            }
+            return NO_OCR;
+        }
+    }
+
+    public void documentChanged(Long userId, DocumentState before, DocumentState after) {
+        if (before != after) {
+            adjust(userId, after.documents - before.documents, after.processed - before.processed,
+                    after.pending - before.pending);
+        }
+    }
+
+    public void adjust(Long userId, long documents, long processed, long pending) {
+        if (documents == 0 && processed == 0 && pending == 0) {
+            return;
+        }
+        userStatsRepository.adjust(userId, documents, processed, pending, LocalDateTime.now());
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getStatistics(User user) {
+        UserStats stats = userStatsRepository.findById(user.getId()).orElseGet(() -> new UserStats(user.getId()));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("totalDocuments", stats.getDocumentCount());
+        result.put("ocrProcessedCount", stats.getOcrProcessedCount());
+        result.put("ocrPendingCount", stats.getOcrPendingCount());
+        result.put("ocrProcessedPercentage", stats.getDocumentCount() > 0
+                ? (double) stats.getOcrProcessedCount() / stats.getDocumentCount() * 100 : 0);
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.reconcile-interval-ms:3600000}",
+            initialDelayString = "${stats.reconcile-initial-delay-ms:60000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reconcile() {
+        int corrected = 0;
+        for (Long userId : userRepository.findAllIds()) {
+            Boolean drifted = transactionTemplate.execute(status -> reconcileUser(userId));
+            if (Boolean.TRUE.equals(drifted)) {
+                corrected++;
+            }
+        }
+        if (corrected > 0) {
+            logger.warn("User stats reconciliation corrected {} users", corrected);
+        }
+    }
+
+    // Holding the row lock keeps adjust() of concurrent writers out while recounting
+    private boolean reconcileUser(Long userId) {
+        UserStats stats = userStatsRepository.findByIdForUpdate(userId).orElse(null);
+        long[] counts = countDocuments(userId);
+        if (stats == null) {
+            stats = new UserStats(userId);
+            stats.setCounts(counts[0], counts[1], counts[2]);
+            userStatsRepository.save(stats);
+            return true;
+        }
+
+        if (stats.getDocumentCount() == counts[0] && stats.getOcrProcessedCount() == counts[1]
+                && stats.getOcrPendingCount() == counts[2]) {
+            return false;
+        }
+        logger.info("User {} stats drifted: documents {} -> {}, processed {} -> {}, pending {} -> {}", userId,
+                stats.getDocumentCount(), counts[0], stats.getOcrProcessedCount(), counts[1],
+                stats.getOcrPendingCount(), counts[2]);
+        stats.setCounts(counts[0], counts[1], counts[2]);
+        return true;
+    }
+
+    // {documents, OCR processed, OCR pending}
+    private long[] countDocuments(Long userId) {
+        Object[] row = documentRepository.countStatsByUserId(userId).get(0);
+        return new long[] {((Number) row[0]).longValue(), ((Number) row[1]).longValue(), ((Number) row[2]).longValue()};
+    }
+}
@@ -0,0 +1,58 @@
+package com.documentmanager.service.impl;
+
+import com.documentmanager.repository.FileBlobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects blob reads in memory and writes file_blobs.last_accessed_at in batches, so a
+ * download does not cost a write to the primary. Losing up to a flush interval of accesses
+ * on shutdown only delays a blob's demotion.
+ */
+@Component
+public class BlobAccessLog {
+
+    private static final int FLUSH_CHUNK = 500;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    // Content hash -> whether the blob was recalled from the cold tier
+    private final Map<String, Boolean> pending = new ConcurrentHashMap<>();
+
+    public void recordAccess(String contentHash) {
+        pending.putIfAbsent(contentHash, Boolean.FALSE);
+    }
+
+    public void recordRecall(String contentHash) {
+        pending.put(contentHash, Boolean.TRUE);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.tiering.access-flush-ms:60000}")
+    public void flush() {
+        List<String> accessed = new ArrayList<>();
+        List<String> recalled = new ArrayList<>();
+        for (String contentHash : pending.keySet()) {
+            // Taken one by one, so a recall recorded meanwhile is not lost with the entry
+            Boolean wasRecalled = pending.remove(contentHash);
+            if (wasRecalled != null) {
+                (wasRecalled ? recalled : accessed).add(contentHash);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < accessed.size(); i += FLUSH_CHUNK) {
+            fileBlobRepository.markAccessed(accessed.subList(i, Math.min(i + FLUSH_CHUNK, accessed.size())), now);
+        }
+        for (int i = 0; i < recalled.size(); i += FLUSH_CHUNK) {
+            fileBlobRepository.markRecalled(recalled.subList(i, Math.min(i + FLUSH_CHUNK, recalled.size())), now);
+        }
+    }
+}
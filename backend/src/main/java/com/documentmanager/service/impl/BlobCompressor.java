@@ -0,0 +1,235 @@
+package com.documentmanager.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Optional gzip compression of stored blobs.
+ *
+ * The Deflater level is chosen by content type: uncompressed raster images use the fastest
+ * level, where most of the gain is, and text uses the default level. Formats that are
+ * already compressed are skipped by type, and everything else by an entropy estimate of a
+ * few samples of the file, so high-entropy content is never run through the codec. A
+ * result that saves less than storage.compression.min-saving is thrown away.
+ *
+ * Types that viewers read in byte ranges (PDF, audio, video) are never compressed: a gzip
+ * stream cannot be entered in the middle, so every range would inflate the file from the
+ * start.
+ *
+ * Reports documents.storage.compression.* metrics: bytes in and out, and the CPU time spent
+ * per MB for compressing on write and for decompressing on read.
+ */
+@Component
+public class BlobCompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobCompressor.class);
+
+    public static final String SUFFIX = ".gz";
+    public static final String CONTENT_ENCODING = "gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SAMPLE_SIZE = 16 * 1024;
+    private static final double MAX_SAMPLE_ENTROPY = 7.5;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private static final Map<String, Integer> LEVELS = Map.of(
+            "image/tiff", Deflater.BEST_SPEED,
+            "image/bmp", Deflater.BEST_SPEED,
+            "image/x-ms-bmp", Deflater.BEST_SPEED);
+
+    private static final Set<String> ALREADY_COMPRESSED = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "application/zip", "application/gzip",
+            "application/x-7z-compressed", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+
+    private static final Set<String> RANGE_READ = Set.of("application/pdf");
+
+    @Value("${storage.compression.enabled:false}")
+    private boolean enabled;
+
+    // Keep the compressed copy only if it is at least this much smaller
+    @Value("${storage.compression.min-saving:0.1}")
+    private double minSaving;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private Counter bytesIn;
+    private Counter bytesOut;
+    private Counter compressCpuNanos;
+    private Counter decompressedBytes;
+    private Counter decompressCpuNanos;
+    private Counter skipped;
+
+    @PostConstruct
+    public void init() {
+        bytesIn = meterRegistry.counter("documents.storage.compression.bytes_in");
+        bytesOut = meterRegistry.counter("documents.storage.compression.bytes_out");
+        compressCpuNanos = meterRegistry.counter("documents.storage.compression.cpu_nanos");
+        decompressedBytes = meterRegistry.counter("documents.storage.decompression.bytes");
+        decompressCpuNanos = meterRegistry.counter("documents.storage.decompression.cpu_nanos");
+        skipped = meterRegistry.counter("documents.storage.compression.skipped");
+        Gauge.builder("documents.storage.compression.ratio", this,
+                c -> c.bytesOut.count() > 0 ? c.bytesIn.count() / c.bytesOut.count() : 1.0).register(meterRegistry);
+        Gauge.builder("documents.storage.compression.cpu_ms_per_mb", this,
+                c -> perMb(c.compressCpuNanos, c.bytesIn)).register(meterRegistry);
+        Gauge.builder("documents.storage.decompression.cpu_ms_per_mb", this,
+                c -> perMb(c.decompressCpuNanos, c.decompressedBytes)).register(meterRegistry);
+    }
+
+    /**
+     * Compress the file into the given directory if that is worth it. Returns the
+     * compressed file, which the caller owns, or null to store the file as it is.
+     */
+    public Path compress(Path source, String contentType, Path directory) throws IOException {
+        Integer level = levelFor(contentType);
+        if (!enabled || level == null || looksCompressed(source)) {
+            skipped.increment();
+            return null;
+        }
+
+        long size = Files.size(source);
+        Path target = Files.createTempFile(directory, "compress-", ".tmp");
+        long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+        try {
+            try (InputStream in = Files.newInputStream(source);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), BUFFER_SIZE) {
+                     {
+                         def.setLevel(level);
+                     }
+                 }) {
+                in.transferTo(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        compressCpuNanos.increment(threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+
+        long compressedSize = Files.size(target);
+        if (compressedSize > size * (1 - minSaving)) {
+            logger.debug("Compression of {} saved too little ({} -> {} bytes)", contentType, size, compressedSize);
+            Files.delete(target);
+            skipped.increment();
+            return null;
+        }
+        bytesIn.increment(size);
+        bytesOut.increment(compressedSize);
+        return target;
+    }
+
+    public InputStream decompress(InputStream stored) throws IOException {
+        return new MeteredInputStream(new GZIPInputStream(stored, BUFFER_SIZE));
+    }
+
+    private Integer levelFor(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        if (ALREADY_COMPRESSED.contains(type) || RANGE_READ.contains(type)
+                || type.startsWith("video/") || type.startsWith("audio/")) {
+            return null;
+        }
+        if (LEVELS.containsKey(type)) {
+            return LEVELS.get(type);
+        }
+        if (type.startsWith("text/") || type.endsWith("+xml") || type.endsWith("/xml") || type.endsWith("/json")) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        return null;
+    }
+
+    // Shannon entropy of samples from the start, middle and end; close to 8 bits/byte means compressed data
+    private boolean looksCompressed(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] counts = new long[256];
+            long total = 0;
+            for (long position : new long[] {0, size / 2, Math.max(0, size - SAMPLE_SIZE)}) {
+                ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+                channel.read(buffer, position);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    counts[buffer.get() & 0xff]++;
+                    total++;
+                }
+            }
+            if (total == 0) {
+                return true;
+            }
+            double entropy = 0;
+            for (long count : counts) {
+                if (count > 0) {
+                    double p = (double) count / total;
+                    entropy -= p * Math.log(p) / Math.log(2);
+                }
+            }
+            return entropy > MAX_SAMPLE_ENTROPY;
+        }
+    }
+
+    private static double perMb(Counter nanos, Counter bytes) {
+        return bytes.count() > 0 ? nanos.count() / 1_000_000.0 / (bytes.count() / BYTES_PER_MB) : 0;
+    }
+
+    // Counts decompressed bytes and the CPU time of the reading thread spent inflating them
+    private class MeteredInputStream extends InputStream {
+        private final InputStream in;
+
+        MeteredInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+            int read = in.read(b, off, len);
+            decompressCpuNanos.increment(threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+            if (read > 0) {
+                decompressedBytes.increment(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
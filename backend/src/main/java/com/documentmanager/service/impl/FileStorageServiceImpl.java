@@ -2,27 +2,62 @@ package com.documentmanager.service.impl;
 
 import com.documentmanager.entity.Document;
 import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.FileBlob;
+import com.documentmanager.repository.FileBlobRepository;
+import com.documentmanager.service.BlobStore;
 import com.documentmanager.service.FileStorageService;
+import com.documentmanager.service.LocalFile;
+import com.documentmanager.service.StagedBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Local-disk storage with content addressing: each distinct content is stored once under
+ * blobs/ by its SHA-256, and attachments reference the shared FileBlob.
+ *
+ * Stored paths are keys relative to file.upload-dir (blobs/ab/cd/abcd...), so the storage
+ * root can be moved. Absolute paths written before keys existed are still resolved as they
+ * are until StorageLayoutMigrator has moved their files.
+ *
+ * Blobs of compressible types may be stored gzip-compressed at their key plus ".gz" (see
+ * BlobCompressor). The content hash and sizes on attachments always describe the original bytes.
+ *
+ * With a cold tier configured, StorageTieringService drops the local copy of blobs nobody
+ * read for a while; getFilePath copies them back from the cold store on the next access.
+ */
 @Service
 public class FileStorageServiceImpl implements FileStorageService {
 
@@ -31,14 +66,46 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
 
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private BlobCompressor blobCompressor;
+
+    @Autowired
+    private BlobAccessLog blobAccessLog;
+
+    // Set when storage.cold.type selects a cold tier
+    @Autowired(required = false)
+    private BlobStore coldStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private Path fileStorageLocation;
+    private Path blobLocation;
+    private Path stagingLocation;
+
+    private Counter deduplicated;
+    private Counter deduplicatedBytes;
+    private Counter recalled;
+    private Counter recalledBytes;
+
+    private final Map<String, CompletableFuture<Void>> recalls = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() throws IOException {
         this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.blobLocation = fileStorageLocation.resolve("blobs");
+        this.stagingLocation = fileStorageLocation.resolve("staging");
+        deduplicated = meterRegistry.counter("documents.storage.deduplicated");
+        deduplicatedBytes = meterRegistry.counter("documents.storage.deduplicated_bytes");
+        recalled = meterRegistry.counter("documents.storage.tiering.recalled");
+        recalledBytes = meterRegistry.counter("documents.storage.tiering.recalled_bytes");
 
         try {
-            Files.createDirectories(this.fileStorageLocation);
+            Files.createDirectories(this.blobLocation);
+            Files.createDirectories(this.stagingLocation);
             logger.info("File storage location initialized: {}", this.fileStorageLocation);
         } catch (Exception ex) {
             throw new IOException("Could not create the directory where the uploaded files will be stored.", ex);
@@ -46,44 +113,77 @@ public class FileStorageServiceImpl implements FileStorageService {
     }
 
     @Override
+    @Transactional(propagation = Propagation.MANDATORY)
     public FileAttachment storeFile(MultipartFile file, Document document) throws IOException {
-        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-
-        if (originalFilename.contains("..")) {
-            throw new IOException("Sorry! Filename contains invalid path sequence " + originalFilename);
+        try (InputStream inputStream = file.getInputStream()) {
+            return storeFile(inputStream, file.getOriginalFilename(), file.getContentType(), document);
         }
+    }
 
-        // Generate unique filename
-        String fileExtension = getFileExtension(originalFilename);
-        String storedFilename = generateUniqueFilename(document, fileExtension);
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public FileAttachment storeFile(InputStream inputStream, String filename, String contentType,
+                                    Document document) throws IOException {
+        String originalFilename = checkFilename(filename);
 
-        // Create user-specific directory
-        Path userDirectory = this.fileStorageLocation.resolve(document.getUser().getId().toString());
-        Files.createDirectories(userDirectory);
+        // Hash while copying to a staging file, so the content is read exactly once
+        Path stagedFile = Files.createTempFile(stagingLocation, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long fileSize;
+            try (OutputStream out = Files.newOutputStream(stagedFile)) {
+                fileSize = new DigestInputStream(inputStream, digest).transferTo(out);
+            }
+            try (StagedBlob blob = stage(stagedFile, HexFormat.of().formatHex(digest.digest()), fileSize, contentType)) {
+                return storeBlob(blob, originalFilename, contentType, document);
+            }
+        } finally {
+            Files.deleteIfExists(stagedFile);
+        }
+    }
 
-        // Copy file to the target location
-        Path targetLocation = userDirectory.resolve(storedFilename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    @Override
+    public StagedBlob prepareStagedFile(Path stagedFile, String contentType) throws IOException {
+        MessageDigest digest = sha256();
+        long fileSize;
+        try (InputStream in = new DigestInputStream(Files.newInputStream(stagedFile), digest)) {
+            fileSize = in.transferTo(OutputStream.nullOutputStream());
+        }
+        return stage(stagedFile, HexFormat.of().formatHex(digest.digest()), fileSize, contentType);
+    }
 
-        logger.info("File stored successfully: {}", targetLocation);
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public FileAttachment storeStagedFile(StagedBlob blob, String filename, String contentType,
+                                          Document document) throws IOException {
+        String originalFilename = checkFilename(filename);
+        FileAttachment attachment = storeBlob(blob, originalFilename, contentType, document);
+        // Still there if the content was already stored; on failure it is left to the caller
+        Files.deleteIfExists(blob.getStagedFile());
+        return attachment;
+    }
 
-        return new FileAttachment(
-                originalFilename,
-                storedFilename,
-                file.getContentType(),
-                file.getSize(),
-                targetLocation.toString(),
-                document
-        );
+    /**
+     * Root of the local storage (file.upload-dir)
+     */
+    public Path getStorageLocation() {
+        return fileStorageLocation;
+    }
+
+    @Override
+    public Path getStagingPath(String name) {
+        return stagingLocation.resolve(name);
     }
 
     @Override
     public Resource loadFileAsResource(FileAttachment fileAttachment) throws IOException {
         try {
-            Path filePath = Paths.get(fileAttachment.getFilePath()).normalize();
+            Path filePath = getFilePath(fileAttachment);
             Resource resource = new UrlResource(filePath.toUri());
 
-            if (resource.exists()) {
+            if (resource.exists() && isCompressed(fileAttachment.getFilePath())) {
+                return new InputStreamResource(blobCompressor.decompress(resource.getInputStream()));
+            } else if (resource.exists()) {
                 return resource;
             } else {
                 throw new IOException("File not found " + fileAttachment.getOriginalFilename());
@@ -96,18 +196,57 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Override
     public void deleteFile(FileAttachment fileAttachment) throws IOException {
         try {
-            Path filePath = Paths.get(fileAttachment.getFilePath()).normalize();
+            deleteFile(fileAttachment.getFilePath());
+        } catch (IOException ex) {
+            throw new IOException("Could not delete file " + fileAttachment.getOriginalFilename(), ex);
+        }
+    }
+
+    @Override
+    public void deleteFile(String storedPath) throws IOException {
+        try {
+            Path filePath = resolve(storedPath);
             Files.deleteIfExists(filePath);
             logger.info("File deleted successfully: {}", filePath);
         } catch (IOException ex) {
-            logger.error("Error deleting file: {}", fileAttachment.getFilePath(), ex);
-            throw new IOException("Could not delete file " + fileAttachment.getOriginalFilename(), ex);
+            logger.error("Error deleting file: {}", storedPath, ex);
+            throw ex;
         }
     }
 
+    @Override
+    @Transactional
+    public void deleteBlobIfUnreferenced(String contentHash) throws IOException {
+        FileBlob blob = fileBlobRepository.findByIdForUpdate(contentHash).orElse(null);
+        if (blob == null || blob.getRefCount() > 0) {
+            // Already purged, or referenced again since the tombstone was written
+            return;
+        }
+        // Deleted under the row lock: an upload of the same content waits, then stores it anew.
+        // A blob not yet moved to the current layout may also have a copy at its key.
+        deleteFile(blob.getFilePath());
+        deleteFile(blobKey(contentHash));
+        deleteFile(blobKey(contentHash) + BlobCompressor.SUFFIX);
+        if (coldStore != null) {
+            coldStore.delete(blob.getFilePath());
+            if (!blob.getFilePath().equals(blobKey(contentHash))) {
+                coldStore.delete(blobKey(contentHash));
+            }
+        }
+        fileBlobRepository.delete(blob);
+    }
+
     @Override
     public Path getFilePath(FileAttachment fileAttachment) throws IOException {
-        Path filePath = Paths.get(fileAttachment.getFilePath()).normalize();
+        Path filePath = resolve(fileAttachment.getFilePath());
+        String contentHash = fileAttachment.getContentHash();
+
+        if (!Files.exists(filePath) && contentHash != null && coldStore != null) {
+            recall(fileAttachment.getFilePath(), filePath);
+            blobAccessLog.recordRecall(contentHash);
+        } else if (contentHash != null) {
+            blobAccessLog.recordAccess(contentHash);
+        }
 
         if (!Files.exists(filePath)) {
             throw new IOException("File not found: " + fileAttachment.getOriginalFilename());
@@ -116,23 +255,185 @@ public class FileStorageServiceImpl implements FileStorageService {
         return filePath;
     }
 
-    private String generateUniqueFilename(Document document, String extension) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String uuid = UUID.randomUUID().toString().substring(0, 8);
-        String docNumber = document.getNumber().replaceAll("[^a-zA-Z0-9]", "_");
+    /**
+     * Copy a demoted blob back from the cold tier. Concurrent requests for the same key
+     * wait for one download instead of each fetching the object.
+     */
+    private void recall(String key, Path filePath) throws IOException {
+        CompletableFuture<Void> recall = new CompletableFuture<>();
+        CompletableFuture<Void> running = recalls.putIfAbsent(key, recall);
+        if (running != null) {
+            try {
+                running.join();
+                return;
+            } catch (CompletionException e) {
+                throw new IOException("Could not recall " + key + " from " + coldStore.getName(), e.getCause());
+            }
+        }
 
-        return String.format("%s_%s_%s_%s%s",
-                docNumber,
-                document.getId() != null ? document.getId() : "new",
-                timestamp,
-                uuid,
-                extension);
+        long started = System.nanoTime();
+        Path download = stagingLocation.resolve("recall-" + UUID.randomUUID() + ".tmp");
+        try {
+            coldStore.get(key, download);
+            Files.createDirectories(filePath.getParent());
+            Files.move(download, filePath, StandardCopyOption.ATOMIC_MOVE);
+            recalled.increment();
+            recalledBytes.increment(Files.size(filePath));
+            logger.info("Recalled {} from {} in {} ms", key, coldStore.getName(), (System.nanoTime() - started) / 1_000_000);
+            recall.complete(null);
+        } catch (NoSuchFileException e) {
+            // Not in the cold tier either; reported as a missing file by the caller
+            logger.warn("File {} is neither stored locally nor in {}", key, coldStore.getName());
+            recall.complete(null);
+        } catch (IOException | RuntimeException e) {
+            recall.completeExceptionally(e);
+            throw e;
+        } finally {
+            recalls.remove(key, recall);
+            Files.deleteIfExists(download);
+        }
+    }
+
+    @Override
+    public String getContentEncoding(FileAttachment fileAttachment) {
+        return isCompressed(fileAttachment.getFilePath()) ? BlobCompressor.CONTENT_ENCODING : null;
+    }
+
+    @Override
+    public InputStream openStream(FileAttachment fileAttachment) throws IOException {
+        InputStream in = Files.newInputStream(getFilePath(fileAttachment));
+        if (!isCompressed(fileAttachment.getFilePath())) {
+            return in;
+        }
+        try {
+            return blobCompressor.decompress(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
     }
 
-    private String getFileExtension(String filename) {
-        if (filename == null || filename.lastIndexOf('.') == -1) {
-            return "";
+    @Override
+    public LocalFile openLocalFile(FileAttachment fileAttachment) throws IOException {
+        Path filePath = getFilePath(fileAttachment);
+        if (!isCompressed(fileAttachment.getFilePath())) {
+            return new LocalFile(filePath, false);
+        }
+        Path copy = Files.createTempFile(stagingLocation, "read-", ".tmp");
+        try (InputStream in = blobCompressor.decompress(Files.newInputStream(filePath))) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+        return new LocalFile(copy, true);
+    }
+
+    // Compressing is the slow part, so it is done before the blob row is locked and only for
+    // new content; a concurrent upload of the same content may waste it
+    private StagedBlob stage(Path stagedFile, String contentHash, long fileSize, String contentType) throws IOException {
+        Path compressedFile = existingBlobKey(contentHash) == null
+                ? blobCompressor.compress(stagedFile, contentType, stagingLocation) : null;
+        return new StagedBlob(stagedFile, contentHash, fileSize, compressedFile);
+    }
+
+    // Takes a blob reference and moves the staged file into place unless the content is already stored
+    private FileAttachment storeBlob(StagedBlob blob, String originalFilename, String contentType,
+                                     Document document) throws IOException {
+        String contentHash = blob.getContentHash();
+        long fileSize = blob.getFileSize();
+        Path compressedFile = blob.getCompressedFile();
+        String key = compressedFile != null ? blobKey(contentHash) + BlobCompressor.SUFFIX : blobKey(contentHash);
+        long storedSize = compressedFile != null ? Files.size(compressedFile) : fileSize;
+
+        // The content lock and the blob row stay locked until commit, so neither a purge nor the
+        // scrubber can remove the file between the check below and this transaction's commit
+        fileBlobRepository.lockContent(contentHash);
+        fileBlobRepository.addReference(contentHash, key, fileSize, storedSize, LocalDateTime.now());
+        String storedKey = existingBlobKey(contentHash);
+        if (storedKey != null) {
+            key = storedKey;
+            deduplicated.increment();
+            deduplicatedBytes.increment(fileSize);
+            logger.info("File deduplicated: {} ({} bytes)", key, fileSize);
+        } else {
+            // Also when the content was purged since it was prepared; it is then stored as it is
+            Path blobPath = resolve(key);
+            Files.createDirectories(blobPath.getParent());
+            Files.move(compressedFile != null ? compressedFile : blob.getStagedFile(), blobPath,
+                    StandardCopyOption.ATOMIC_MOVE);
+            fileBlobRepository.updateLocation(contentHash, key, storedSize);
+            logger.info("File stored successfully: {} ({} of {} bytes)", blobPath, storedSize, fileSize);
+        }
+
+        FileAttachment attachment = new FileAttachment(
+                originalFilename,
+                contentHash,
+                contentType,
+                fileSize,
+                key,
+                document
+        );
+        attachment.setContentHash(contentHash);
+        return attachment;
+    }
+
+    /**
+     * Key under which the content is stored, plain or compressed, or null if it is not stored.
+     */
+    public String existingBlobKey(String contentHash) throws IOException {
+        String key = blobKey(contentHash);
+        if (Files.exists(resolve(key))) {
+            return key;
+        }
+        if (Files.exists(resolve(key + BlobCompressor.SUFFIX))) {
+            return key + BlobCompressor.SUFFIX;
+        }
+        return null;
+    }
+
+    // Only blob keys carry a codec suffix; a legacy absolute path may end in .gz as uploaded
+    boolean isCompressed(String key) {
+        return key.startsWith("blobs/") && key.endsWith(BlobCompressor.SUFFIX);
+    }
+
+    private String checkFilename(String filename) throws IOException {
+        String originalFilename = StringUtils.cleanPath(filename);
+
+        if (originalFilename.contains("..")) {
+            throw new IOException("Sorry! Filename contains invalid path sequence " + originalFilename);
+        }
+        return originalFilename;
+    }
+
+    /**
+     * Storage key of a blob: blobs/ab/cd/abcd... Two levels of hex prefixes keep every
+     * directory at a few hundred entries even with hundreds of millions of files.
+     */
+    public String blobKey(String contentHash) {
+        return "blobs/" + contentHash.substring(0, 2) + "/" + contentHash.substring(2, 4) + "/" + contentHash;
+    }
+
+    /**
+     * Path of a stored key. Legacy absolute paths are returned as they are.
+     */
+    public Path resolve(String key) throws IOException {
+        Path path = Paths.get(key);
+        if (path.isAbsolute()) {
+            return path.normalize();
+        }
+        Path resolved = fileStorageLocation.resolve(path).normalize();
+        if (!resolved.startsWith(fileStorageLocation)) {
+            throw new IOException("Storage key outside of the upload directory: " + key);
+        }
+        return resolved;
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
-        return filename.substring(filename.lastIndexOf('.'));
     }
-}
\ No newline at end of file
+}
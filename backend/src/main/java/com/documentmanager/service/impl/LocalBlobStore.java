@@ -0,0 +1,88 @@
+package com.documentmanager.service.impl;
+
+import com.documentmanager.service.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Cold tier on a local or mounted file system (e.g. a large HDD or NFS volume), laid out
+ * like the hot storage under storage.cold.local-dir.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.cold.type", havingValue = "local")
+public class LocalBlobStore implements BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalBlobStore.class);
+
+    @Value("${storage.cold.local-dir:cold-storage}")
+    private String localDir;
+
+    private Path root;
+
+    public LocalBlobStore() {
+    }
+
+    public LocalBlobStore(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        this.root = Paths.get(localDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        logger.info("Cold storage location initialized: {}", root);
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        // Copied next to the target first, so a reader never sees a partial file
+        Path copy = Files.createTempFile(target.getParent(), "put-", ".tmp");
+        try {
+            Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(copy, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        Files.copy(resolve(key), target);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) throws IOException {
+        Path resolved = root.resolve(key).normalize();
+        if (!resolved.startsWith(root) || resolved.equals(root)) {
+            throw new IOException("Storage key outside of the cold storage directory: " + key);
+        }
+        return resolved;
+    }
+}
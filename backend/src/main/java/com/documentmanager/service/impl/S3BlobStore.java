@@ -0,0 +1,259 @@
+package com.documentmanager.service.impl;
+
+import com.documentmanager.service.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cold tier in an S3-compatible object store. storage.cold.s3.endpoint points it at
+ * something other than AWS (MinIO, a local stand-in for tests); such stores usually need
+ * storage.cold.s3.path-style=true. Without an access key the SDK's default credential
+ * chain is used. Files larger than storage.cold.s3.part-size are uploaded in parts, each
+ * read straight from the file, so no upload is buffered in memory.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.cold.type", havingValue = "s3")
+public class S3BlobStore implements BlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3BlobStore.class);
+
+    @Value("${storage.cold.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${storage.cold.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${storage.cold.s3.bucket}")
+    private String bucket;
+
+    // Prepended to every storage key, so one bucket can serve several installations
+    @Value("${storage.cold.s3.prefix:}")
+    private String prefix;
+
+    @Value("${storage.cold.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${storage.cold.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${storage.cold.s3.path-style:false}")
+    private boolean pathStyle;
+
+    @Value("${storage.cold.s3.part-size:67108864}")
+    private long partSize;
+
+    private S3Client client;
+
+    @PostConstruct
+    public void init() {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyle);
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (!accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        client = builder.build();
+        logger.info("Cold storage: S3 bucket {} at {}", bucket, endpoint.isBlank() ? region : endpoint);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "s3";
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        try {
+            client.headObject(HeadObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+            return true;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw new IOException("Could not look up " + key + " in S3: " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("Could not look up " + key + " in S3: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        try {
+            if (size <= partSize) {
+                client.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey(key)).build(),
+                        RequestBody.fromFile(source));
+            } else {
+                putMultipart(objectKey(key), source, size);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SdkException e) {
+            throw new IOException("Could not upload " + key + " to S3: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        try {
+            client.getObject(GetObjectRequest.builder().bucket(bucket).key(objectKey(key)).build(),
+                    ResponseTransformer.toFile(target));
+        } catch (S3Exception e) {
+            Files.deleteIfExists(target);
+            if (e.statusCode() == 404) {
+                throw new NoSuchFileException(key);
+            }
+            throw new IOException("Could not download " + key + " from S3: " + e.getMessage(), e);
+        } catch (SdkException e) {
+            Files.deleteIfExists(target);
+            throw new IOException("Could not download " + key + " from S3: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            // S3 answers 204 for keys that do not exist as well
+            client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(objectKey(key)).build());
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + key + " from S3: " + e.getMessage(), e);
+        }
+    }
+
+    private void putMultipart(String objectKey, Path source, long size) {
+        String uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(objectKey).build()).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long position = 0; position < size; position += partSize, partNumber++) {
+                long offset = position;
+                long length = Math.min(partSize, size - position);
+                // The provider opens the part again for each retry of the request
+                RequestBody body = RequestBody.fromContentProvider(() -> openPart(source, offset, length),
+                        length, "application/octet-stream");
+                String etag = client.uploadPart(UploadPartRequest.builder().bucket(bucket).key(objectKey)
+                        .uploadId(uploadId).partNumber(partNumber).contentLength(length).build(), body).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+            }
+            client.completeMultipartUpload(CompleteMultipartUploadRequest.builder().bucket(bucket).key(objectKey)
+                    .uploadId(uploadId).multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()).build());
+        } catch (RuntimeException e) {
+            // Otherwise the uploaded parts are kept (and billed) until a lifecycle rule removes them
+            try {
+                client.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(objectKey)
+                        .uploadId(uploadId).build());
+            } catch (SdkException abortFailure) {
+                e.addSuppressed(abortFailure);
+            }
+            throw e;
+        }
+    }
+
+    private InputStream openPart(Path source, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ).position(offset);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String objectKey(String key) {
+        return prefix + key;
+    }
+
+    // Ends after the part, so the SDK cannot read into the next one
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
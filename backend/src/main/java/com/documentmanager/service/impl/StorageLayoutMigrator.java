@@ -0,0 +1,215 @@
+package com.documentmanager.service.impl;
+
+import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.repository.FileAttachmentRepository;
+import com.documentmanager.repository.FileBlobRepository;
+import com.documentmanager.service.FilePurgeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Moves files stored before the blobs/ab/cd layout into it while the application runs.
+ *
+ * Covers per-user files at absolute paths (uploads/&lt;userId&gt;/...) and blobs at the
+ * earlier one-level absolute paths. Each file is hashed without holding locks, then
+ * hard-linked (or copied, across file systems) to its blob key and the rows are switched
+ * in one short transaction under the attachment's row lock. The old path is handed to
+ * FilePurgeService, so downloads that already resolved it have the grace period to finish.
+ * Attachments changed meanwhile are skipped and picked up again by the next run.
+ *
+ * Off unless storage.migration.enabled is set; safe to stop and restart at any point.
+ */
+@Service
+public class StorageLayoutMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageLayoutMigrator.class);
+
+    @Value("${storage.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.migration.batch-size:100}")
+    private int batchSize;
+
+    @Value("${storage.migration.max-files-per-second:20}")
+    private int maxFilesPerSecond;
+
+    @Autowired
+    private FileStorageServiceImpl fileStorageService;
+
+    @Autowired
+    private FileAttachmentRepository fileAttachmentRepository;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private FilePurgeService filePurgeService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Scheduled(fixedDelayString = "${storage.migration.interval-ms:60000}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        long afterId = 0;
+        int migrated = 0;
+        int skipped = 0;
+        List<Long> ids;
+        do {
+            ids = fileAttachmentRepository.findIdsOutsideBlobLayout(afterId, PageRequest.of(0, batchSize));
+            for (Long id : ids) {
+                throttle();
+                try {
+                    if (migrateAttachment(id)) {
+                        migrated++;
+                    } else {
+                        skipped++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Could not move attachment {} to the blob layout: {}", id, e.getMessage());
+                    skipped++;
+                }
+                afterId = id;
+            }
+        } while (ids.size() == batchSize);
+
+        if (migrated > 0 || skipped > 0) {
+            logger.info("Storage layout migration: {} attachments moved, {} skipped", migrated, skipped);
+        }
+    }
+
+    private boolean migrateAttachment(Long id) throws IOException {
+        FileAttachment snapshot = fileAttachmentRepository.findById(id).orElse(null);
+        if (snapshot == null) {
+            return false;
+        }
+        String oldPath = snapshot.getFilePath();
+        Path source = fileStorageService.resolve(oldPath);
+        if (!Files.exists(source)) {
+            logger.warn("File of attachment {} is missing: {}", id, source);
+            return false;
+        }
+
+        // Hashing a large file takes a while, so it happens before any lock is taken
+        String contentHash = snapshot.getContentHash() != null ? snapshot.getContentHash() : hash(source);
+        long fileSize = Files.size(source);
+
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                    switchToBlob(id, oldPath, contentHash, fileSize)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean switchToBlob(Long id, String oldPath, String contentHash, long fileSize) {
+        FileAttachment attachment = fileAttachmentRepository.findByIdForUpdate(id).orElse(null);
+        if (attachment == null || !oldPath.equals(attachment.getFilePath())) {
+            return false;
+        }
+        Long userId = attachment.getDocument().getUser().getId();
+        Long documentId = attachment.getDocument().getId();
+
+        try {
+            if (attachment.getContentHash() == null) {
+                // A new reference; the content and blob row locks also keep a purge or scrub of it out
+                fileBlobRepository.lockContent(contentHash);
+                fileBlobRepository.addReference(contentHash, fileStorageService.blobKey(contentHash), fileSize,
+                        fileSize, LocalDateTime.now());
+                attachment.setContentHash(contentHash);
+                attachment.setFilePath(placeBlob(oldPath, contentHash, fileSize));
+                filePurgeService.schedule(oldPath, userId, documentId);
+                return true;
+            }
+
+            // Already a blob, at an old path shared by every attachment with this content
+            if (fileBlobRepository.findByIdForUpdate(contentHash).isEmpty()) {
+                return false;
+            }
+            String key = placeBlob(oldPath, contentHash, fileSize);
+            for (FileAttachment shared : fileAttachmentRepository.findByContentHash(contentHash)) {
+                shared.setFilePath(key);
+            }
+            filePurgeService.schedule(oldPath, userId, documentId);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Under the blob row lock: content uploaded since may already be stored, possibly compressed
+    private String placeBlob(String oldPath, String contentHash, long fileSize) throws IOException {
+        String key = fileStorageService.existingBlobKey(contentHash);
+        if (key == null) {
+            key = fileStorageService.blobKey(contentHash);
+            linkOrCopy(fileStorageService.resolve(oldPath), fileStorageService.resolve(key));
+            fileBlobRepository.updateLocation(contentHash, key, fileSize);
+        }
+        return key;
+    }
+
+    // Nothing to do if the blob is already there (e.g. the same content was uploaded since)
+    private void linkOrCopy(Path source, Path target) throws IOException {
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Different file system: copy next to the target, then move it into place atomically
+            Path copy = Files.createTempFile(target.getParent(), "migrate-", ".tmp");
+            try {
+                Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(copy, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(copy);
+            }
+        }
+    }
+
+    private String hash(Path file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void throttle() {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(1000L / maxFilesPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package com.documentmanager.service.impl;
+
+import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.FileBlob;
+import com.documentmanager.repository.FileAttachmentRepository;
+import com.documentmanager.repository.FileBlobRepository;
+import com.documentmanager.repository.UploadSessionRepository;
+import com.documentmanager.service.BlobStore;
+import com.documentmanager.service.FilePurgeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Checks stored files against the database in the background and cleans up what leaked.
+ *
+ * A cycle goes through five phases, each in keyset-ordered batches:
+ * <ul>
+ *   <li>blobs: every file_blobs row has its file (locally or in the cold tier), of the
+ *       recorded size and, with scrub.verify-checksums, of the recorded SHA-256; the
+ *       reference count matches the attachments</li>
+ *   <li>attachments: files stored before deduplication exist with the recorded size, and
+ *       no blob-backed attachment lost its blob row</li>
+ *   <li>tree: files under blobs/ that nothing references (left behind by a rolled-back
+ *       upload, for example) are moved to quarantine/</li>
+ *   <li>staging: temporary files of crashed uploads and abandoned upload sessions are deleted</li>
+ *   <li>quarantine: files kept longer than scrub.quarantine-retention-days are deleted</li>
+ * </ul>
+ *
+ * Problems with records are reported (WARN log and documents.storage.scrub.* metrics),
+ * never repaired by deleting rows. The only corrections are reference counts: a count lower
+ * than the attachments is raised at once, because the purger would otherwise delete a file
+ * in use; a higher count is lowered only after two cycles in a row showed the same excess,
+ * since a bulk import holds references for a while before its documents commit.
+ *
+ * Safe to run continuously: each run works for at most scrub.max-run-seconds and continues
+ * where it stopped on the next run, reads at most scrub.max-bytes-per-second and checks at
+ * most scrub.max-files-per-second, on a minimum-priority thread. A file is only treated as
+ * an orphan once its inode has not changed for scrub.grace-hours, which covers uploads and
+ * moves whose transaction has not committed yet, and is re-checked under the content lock
+ * (FileBlobRepository.lockContent) before it is moved. Off unless scrub.enabled is set.
+ */
+@Service
+public class StorageScrubber {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageScrubber.class);
+
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}(\\.gz)?");
+    private static final Pattern UPLOAD_PART = Pattern.compile("upload-([0-9a-f-]{36})\\.part");
+
+    private static final int PHASE_BLOBS = 0;
+    private static final int PHASE_ATTACHMENTS = 1;
+    private static final int PHASE_TREE = 2;
+    private static final int PHASE_STAGING = 3;
+    private static final int PHASE_QUARANTINE = 4;
+    private static final int PHASE_DONE = 5;
+
+    @Value("${scrub.enabled:false}")
+    private boolean enabled;
+
+    @Value("${scrub.cycle-interval-hours:24}")
+    private int cycleIntervalHours;
+
+    @Value("${scrub.max-run-seconds:30}")
+    private int maxRunSeconds;
+
+    @Value("${scrub.batch-size:200}")
+    private int batchSize;
+
+    @Value("${scrub.max-files-per-second:50}")
+    private int maxFilesPerSecond;
+
+    @Value("${scrub.max-bytes-per-second:20971520}")
+    private long maxBytesPerSecond;
+
+    @Value("${scrub.verify-checksums:true}")
+    private boolean verifyChecksums;
+
+    @Value("${scrub.grace-hours:24}")
+    private int graceHours;
+
+    @Value("${scrub.quarantine-retention-days:30}")
+    private int quarantineRetentionDays;
+
+    @Autowired
+    private FileStorageServiceImpl fileStorageService;
+
+    @Autowired(required = false)
+    private BlobStore coldStore;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private FileAttachmentRepository fileAttachmentRepository;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private FilePurgeService filePurgeService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Position in the current cycle; kept in memory, so a restart begins a new cycle
+    private int phase = PHASE_DONE;
+    private String afterHash = "";
+    private long afterAttachmentId;
+    private boolean missingBlobPass;
+    private int treePrefix;
+    private Instant cycleStartedAt;
+    private Issues issues = new Issues();
+
+    // Excess of the reference count over the attachments, by blob, in the previous cycle
+    private Map<String, Long> suspectedLeaks = new HashMap<>();
+    private Map<String, Long> leaksThisCycle = new HashMap<>();
+
+    // Results of the last completed cycle
+    private final AtomicLong lastMissing = new AtomicLong();
+    private final AtomicLong lastCorrupt = new AtomicLong();
+    private final AtomicLong lastOrphans = new AtomicLong();
+    private final AtomicLong lastRefMismatches = new AtomicLong();
+    private final AtomicLong lastCompleted = new AtomicLong();
+
+    private Counter filesChecked;
+    private Counter bytesVerified;
+    private Counter refCountsFixed;
+
+    private long pacedUntilNanos;
+
+    @PostConstruct
+    public void init() {
+        filesChecked = meterRegistry.counter("documents.storage.scrub.files_checked");
+        bytesVerified = meterRegistry.counter("documents.storage.scrub.bytes_verified");
+        refCountsFixed = meterRegistry.counter("documents.storage.scrub.ref_counts_fixed");
+        Gauge.builder("documents.storage.scrub.missing", lastMissing, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.scrub.corrupt", lastCorrupt, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.scrub.orphans", lastOrphans, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.scrub.ref_mismatches", lastRefMismatches, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("documents.storage.scrub.last_completed_seconds", lastCompleted, AtomicLong::get).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${scrub.interval-ms:10000}", initialDelayString = "${scrub.initial-delay-ms:600000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        if (phase == PHASE_DONE) {
+            if (cycleStartedAt != null && cycleStartedAt.plusSeconds(cycleIntervalHours * 3600L).isAfter(Instant.now())) {
+                return;
+            }
+            startCycle();
+        }
+
+        Thread thread = Thread.currentThread();
+        int priority = thread.getPriority();
+        thread.setPriority(Thread.MIN_PRIORITY);
+        long deadline = System.nanoTime() + maxRunSeconds * 1_000_000_000L;
+        try {
+            while (phase != PHASE_DONE && System.nanoTime() < deadline && !thread.isInterrupted()) {
+                boolean more = switch (phase) {
+                    case PHASE_BLOBS -> scrubBlobs();
+                    case PHASE_ATTACHMENTS -> scrubAttachments();
+                    case PHASE_TREE -> scrubTree(deadline);
+                    case PHASE_STAGING -> cleanStaging();
+                    default -> cleanQuarantine();
+                };
+                if (!more) {
+                    phase++;
+                }
+            }
+            if (phase == PHASE_DONE) {
+                finishCycle();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The batch is retried on the next run
+            logger.warn("Storage scrub stopped in phase {}: {}", phase, e.getMessage());
+        } finally {
+            thread.setPriority(priority);
+        }
+    }
+
+    private void startCycle() {
+        phase = PHASE_BLOBS;
+        afterHash = "";
+        afterAttachmentId = 0;
+        missingBlobPass = false;
+        treePrefix = 0;
+        cycleStartedAt = Instant.now();
+        issues = new Issues();
+        leaksThisCycle = new HashMap<>();
+        logger.info("Storage scrub cycle started");
+    }
+
+    private void finishCycle() {
+        suspectedLeaks = leaksThisCycle;
+        lastMissing.set(issues.missing);
+        lastCorrupt.set(issues.corrupt);
+        lastOrphans.set(issues.orphans);
+        lastRefMismatches.set(issues.refMismatches);
+        lastCompleted.set(Instant.now().getEpochSecond());
+        logger.info("Storage scrub cycle finished in {} s: {} files checked, {} missing, {} corrupt, " +
+                        "{} reference count mismatches, {} orphans quarantined, {} staging files removed",
+                Instant.now().getEpochSecond() - cycleStartedAt.getEpochSecond(), issues.checked, issues.missing,
+                issues.corrupt, issues.refMismatches, issues.orphans, issues.stagingRemoved);
+    }
+
+    // ---- blobs ----
+
+    private boolean scrubBlobs() throws IOException {
+        List<FileBlob> batch = fileBlobRepository.findBatchAfter(afterHash, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return false;
+        }
+        List<String> hashes = batch.stream().map(FileBlob::getContentHash).toList();
+        Map<String, Map<String, Long>> keysByHash = new HashMap<>();
+        for (Object[] row : fileAttachmentRepository.countByContentHashAndFilePath(hashes)) {
+            keysByHash.computeIfAbsent((String) row[0], h -> new HashMap<>()).put((String) row[1], (Long) row[2]);
+        }
+
+        for (FileBlob blob : batch) {
+            Map<String, Long> keys = keysByHash.getOrDefault(blob.getContentHash(), Map.of());
+            checkReferences(blob, keys.values().stream().mapToLong(Long::longValue).sum());
+            checkBlobFiles(blob, keys);
+            afterHash = blob.getContentHash();
+        }
+        return batch.size() == batchSize;
+    }
+
+    private void checkReferences(FileBlob blob, long attachments) {
+        String contentHash = blob.getContentHash();
+        if (blob.getRefCount() == attachments) {
+            return;
+        }
+        if (blob.getRefCount() < attachments) {
+            issues.refMismatches++;
+            logger.warn("Scrub: blob {} has {} references but {} attachments; correcting", contentHash,
+                    blob.getRefCount(), attachments);
+            correctRefCount(contentHash, null);
+            return;
+        }
+        long excess = blob.getRefCount() - attachments;
+        if (!Long.valueOf(excess).equals(suspectedLeaks.get(contentHash))) {
+            // Possibly an import whose documents have not committed yet, holding a different number
+            // of references each time; only the same excess in the next cycle is taken as a leak
+            leaksThisCycle.put(contentHash, excess);
+            return;
+        }
+        issues.refMismatches++;
+        logger.warn("Scrub: blob {} has {} references but {} attachments in two cycles; correcting", contentHash,
+                blob.getRefCount(), attachments);
+        correctRefCount(contentHash, excess);
+    }
+
+    // Recounted under the blob row lock, which in-flight reference changes also hold. A count is
+    // raised to the attachments at once, and lowered only by the excess seen in both cycles.
+    private void correctRefCount(String contentHash, Long leakedExcess) {
+        transactionTemplate.executeWithoutResult(status -> {
+            FileBlob blob = fileBlobRepository.findByIdForUpdate(contentHash).orElse(null);
+            if (blob == null) {
+                return;
+            }
+            Map<String, Long> keys = new HashMap<>();
+            for (Object[] row : fileAttachmentRepository.countByContentHashAndFilePath(List.of(contentHash))) {
+                keys.put((String) row[1], (Long) row[2]);
+            }
+            int attachments = (int) keys.values().stream().mapToLong(Long::longValue).sum();
+            boolean raise = attachments > blob.getRefCount();
+            boolean lower = leakedExcess != null && blob.getRefCount() - attachments == leakedExcess;
+            if (raise || lower) {
+                blob.setRefCount(attachments);
+                refCountsFixed.increment();
+                if (attachments == 0) {
+                    filePurgeService.scheduleBlob(contentHash, blob.getFilePath());
+                }
+            }
+        });
+    }
+
+    private void checkBlobFiles(FileBlob blob, Map<String, Long> keys) throws IOException {
+        Set<String> allKeys = new LinkedHashSet<>();
+        allKeys.add(blob.getFilePath());
+        allKeys.addAll(keys.keySet());
+
+        boolean verified = false;
+        for (String key : allKeys) {
+            throttle();
+            issues.checked++;
+            filesChecked.increment();
+            Path path = fileStorageService.resolve(key);
+            if (!Files.exists(path)) {
+                if (coldStore != null && coldStore.exists(key)) {
+                    continue;
+                }
+                long affected = keys.getOrDefault(key, 0L);
+                if (affected > 0 || FileBlob.TIER_HOT.equals(blob.getTier())) {
+                    issues.missing++;
+                    logger.warn("Scrub: blob {} is missing at {} ({} attachments affected)", blob.getContentHash(),
+                            key, affected);
+                }
+                continue;
+            }
+            if (key.equals(blob.getFilePath()) && Files.size(path) != blob.getStoredSize()) {
+                issues.corrupt++;
+                logger.warn("Scrub: blob {} at {} has {} bytes, expected {}", blob.getContentHash(), key,
+                        Files.size(path), blob.getStoredSize());
+                continue;
+            }
+            if (verifyChecksums && !verified) {
+                // One copy per blob; further keys hold the same content under another encoding
+                verified = true;
+                String actual = sha256(path, fileStorageService.isCompressed(key));
+                if (!actual.equals(blob.getContentHash())) {
+                    issues.corrupt++;
+                    logger.warn("Scrub: blob {} at {} has checksum {}", blob.getContentHash(), key, actual);
+                }
+            }
+        }
+    }
+
+    // ---- attachments ----
+
+    private boolean scrubAttachments() throws IOException {
+        List<FileAttachment> batch = missingBlobPass
+                ? fileAttachmentRepository.findWithMissingBlobAfter(afterAttachmentId, PageRequest.of(0, batchSize))
+                : fileAttachmentRepository.findWithoutBlobAfter(afterAttachmentId, PageRequest.of(0, batchSize));
+        for (FileAttachment attachment : batch) {
+            afterAttachmentId = attachment.getId();
+            if (missingBlobPass) {
+                issues.missing++;
+                logger.warn("Scrub: attachment {} references blob {} which no longer exists", attachment.getId(),
+                        attachment.getContentHash());
+                continue;
+            }
+            throttle();
+            issues.checked++;
+            filesChecked.increment();
+            Path path = fileStorageService.resolve(attachment.getFilePath());
+            if (!Files.exists(path)) {
+                issues.missing++;
+                logger.warn("Scrub: file of attachment {} is missing at {}", attachment.getId(), attachment.getFilePath());
+            } else if (Files.size(path) != attachment.getFileSize()) {
+                issues.corrupt++;
+                logger.warn("Scrub: file of attachment {} at {} has {} bytes, expected {}", attachment.getId(),
+                        attachment.getFilePath(), Files.size(path), attachment.getFileSize());
+            }
+        }
+        if (batch.size() == batchSize) {
+            return true;
+        }
+        if (!missingBlobPass) {
+            missingBlobPass = true;
+            afterAttachmentId = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // ---- tree ----
+
+    // One blobs/ab/cd directory at a time, so memory stays bounded by a directory's entries
+    private boolean scrubTree(long deadline) throws IOException {
+        Path blobs = fileStorageService.getStorageLocation().resolve("blobs");
+        while (treePrefix < 0x10000 && System.nanoTime() < deadline) {
+            String hex = String.format("%04x", treePrefix);
+            Path directory = blobs.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+            if (Files.isDirectory(directory)) {
+                scrubDirectory(directory, "blobs/" + hex.substring(0, 2) + "/" + hex.substring(2) + "/");
+            }
+            treePrefix++;
+        }
+        return treePrefix < 0x10000;
+    }
+
+    private void scrubDirectory(Path directory, String keyPrefix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS) && isPastGrace(entry)) {
+                    files.add(entry);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        Set<String> hashes = new LinkedHashSet<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (BLOB_NAME.matcher(name).matches()) {
+                hashes.add(name.substring(0, 64));
+            }
+        }
+        Map<String, FileBlob> blobs = new HashMap<>();
+        for (FileBlob blob : fileBlobRepository.findAllById(hashes)) {
+            blobs.put(blob.getContentHash(), blob);
+        }
+
+        for (Path file : files) {
+            throttle();
+            String name = file.getFileName().toString();
+            String key = keyPrefix + name;
+            if (!BLOB_NAME.matcher(name).matches()) {
+                // Leftover temporary file of an interrupted move or copy
+                quarantine(file, key);
+                continue;
+            }
+            String contentHash = name.substring(0, 64);
+            if (isReferenced(blobs.get(contentHash), contentHash, key)) {
+                continue;
+            }
+            // Confirmed under the content lock, which an upload holds from before it inserts the blob row
+            // until it commits: a concurrent upload either committed its reference already or waits
+            Boolean moved = transactionTemplate.execute(status -> {
+                fileBlobRepository.lockContent(contentHash);
+                FileBlob blob = fileBlobRepository.findByIdForUpdate(contentHash).orElse(null);
+                if (isReferenced(blob, contentHash, key)) {
+                    return Boolean.FALSE;
+                }
+                try {
+                    quarantine(file, key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return Boolean.TRUE;
+            });
+            if (Boolean.TRUE.equals(moved)) {
+                logger.warn("Scrub: quarantined unreferenced file {}", key);
+            }
+        }
+    }
+
+    private boolean isReferenced(FileBlob blob, String contentHash, String key) {
+        return blob != null && (key.equals(blob.getFilePath())
+                || fileAttachmentRepository.existsByContentHashAndFilePath(contentHash, key));
+    }
+
+    private void quarantine(Path file, String key) throws IOException {
+        Path target = fileStorageService.getStorageLocation().resolve("quarantine").resolve(key);
+        if (Files.exists(target)) {
+            target = target.resolveSibling(target.getFileName() + "." + System.currentTimeMillis());
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        issues.orphans++;
+    }
+
+    // ---- staging and quarantine ----
+
+    private boolean cleanStaging() throws IOException {
+        Path staging = fileStorageService.getStagingPath("");
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(staging)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (!Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS) || !isPastGrace(entry)) {
+                    continue;
+                }
+                var part = UPLOAD_PART.matcher(name);
+                boolean abandoned = name.endsWith(".tmp")
+                        || (part.matches() && !uploadSessionRepository.existsById(part.group(1)));
+                if (abandoned) {
+                    Files.deleteIfExists(entry);
+                    issues.stagingRemoved++;
+                    logger.info("Scrub: removed abandoned staging file {}", name);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean cleanQuarantine() throws IOException {
+        Path quarantine = fileStorageService.getStorageLocation().resolve("quarantine");
+        if (!Files.isDirectory(quarantine)) {
+            return false;
+        }
+        Instant cutoff = Instant.now().minusSeconds(quarantineRetentionDays * 86400L);
+        try (Stream<Path> files = Files.walk(quarantine)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) && changedAt(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        return false;
+    }
+
+    // ---- helpers ----
+
+    // The inode change time also moves on rename and hard link, unlike the modification time
+    private FileTime changedAt(Path file) throws IOException {
+        try {
+            return (FileTime) Files.getAttribute(file, "unix:ctime", LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return Files.getLastModifiedTime(file, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    private boolean isPastGrace(Path file) throws IOException {
+        return changedAt(file).toInstant().isBefore(Instant.now().minusSeconds(graceHours * 3600L));
+    }
+
+    private String sha256(Path path, boolean compressed) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream file = Files.newInputStream(path);
+             InputStream in = compressed ? new GZIPInputStream(file, buffer.length) : file) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                bytesVerified.increment(read);
+                pace(read);
+            }
+        } catch (ZipException e) {
+            // A damaged gzip stream is corruption, not a reason to stop the scrub
+            return "unreadable (" + e.getMessage() + ")";
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Keeps checksum reads under scrub.max-bytes-per-second
+    private void pace(long bytes) {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        pacedUntilNanos = Math.max(pacedUntilNanos, now) + bytes * 1_000_000_000L / maxBytesPerSecond;
+        long wait = pacedUntilNanos - now;
+        if (wait > 1_000_000) {
+            sleep(wait / 1_000_000);
+        }
+    }
+
+    private void throttle() {
+        if (maxFilesPerSecond > 0) {
+            sleep(1000L / maxFilesPerSecond);
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Issues {
+        long checked;
+        long missing;
+        long corrupt;
+        long refMismatches;
+        long orphans;
+        long stagingRemoved;
+    }
+}
@@ -0,0 +1,178 @@
+package com.documentmanager.service.impl;
+
+import com.documentmanager.entity.FileBlob;
+import com.documentmanager.repository.FileBlobRepository;
+import com.documentmanager.service.BlobStore;
+import com.documentmanager.service.FilePurgeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves blobs nobody read for storage.tiering.cold-after-days to the cold BlobStore, so
+ * local disk only holds the working set. FileStorageServiceImpl recalls them on access.
+ *
+ * Each blob is uploaded without holding locks, then marked COLD under its row lock, and
+ * the local copy is handed to FilePurgeService, so reads that already resolved the path
+ * have the grace period to finish. The cold copy is kept when a blob is recalled, which
+ * makes demoting it again cheap, and is deleted with the blob. A blob purged during its
+ * upload has its cold copy removed again.
+ *
+ * Off unless storage.tiering.enabled is set and storage.cold.type selects a cold store.
+ */
+@Service
+public class StorageTieringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageTieringService.class);
+
+    @Value("${storage.tiering.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.tiering.cold-after-days:30}")
+    private int coldAfterDays;
+
+    @Value("${storage.tiering.batch-size:100}")
+    private int batchSize;
+
+    @Value("${storage.tiering.max-files-per-second:10}")
+    private int maxFilesPerSecond;
+
+    @Autowired(required = false)
+    private BlobStore coldStore;
+
+    @Autowired
+    private FileStorageServiceImpl fileStorageService;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private BlobAccessLog blobAccessLog;
+
+    @Autowired
+    private FilePurgeService filePurgeService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter demoted;
+    private Counter demotedBytes;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        demoted = meterRegistry.counter("documents.storage.tiering.demoted");
+        demotedBytes = meterRegistry.counter("documents.storage.tiering.demoted_bytes");
+        failed = meterRegistry.counter("documents.storage.tiering.demote_failed");
+        if (enabled && coldStore == null) {
+            logger.warn("storage.tiering.enabled is set but no cold store is configured (storage.cold.type)");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.tiering.interval-ms:3600000}", initialDelayString = "${storage.tiering.initial-delay-ms:300000}")
+    public void demote() {
+        if (!enabled || coldStore == null) {
+            return;
+        }
+        // Recent reads must be visible before deciding what is cold
+        blobAccessLog.flush();
+
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(coldAfterDays);
+        LocalDateTime afterAccess = LocalDateTime.of(1970, 1, 1, 0, 0);
+        String afterHash = "";
+        int moved = 0;
+        int skipped = 0;
+        List<FileBlob> batch;
+        do {
+            batch = fileBlobRepository.findDemotable(cutoff, afterAccess, afterHash, PageRequest.of(0, batchSize));
+            for (FileBlob blob : batch) {
+                throttle();
+                try {
+                    if (demoteBlob(blob, cutoff)) {
+                        moved++;
+                    } else {
+                        skipped++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed.increment();
+                    skipped++;
+                    logger.warn("Could not move blob {} to {}: {}", blob.getContentHash(), coldStore.getName(), e.getMessage());
+                }
+                afterAccess = blob.getLastAccessedAt();
+                afterHash = blob.getContentHash();
+            }
+        } while (batch.size() == batchSize);
+
+        if (moved > 0 || skipped > 0) {
+            logger.info("Storage tiering: {} blobs moved to {}, {} skipped", moved, coldStore.getName(), skipped);
+        }
+    }
+
+    private boolean demoteBlob(FileBlob snapshot, LocalDateTime cutoff) throws IOException {
+        String contentHash = snapshot.getContentHash();
+        String key = snapshot.getFilePath();
+        if (!key.startsWith("blobs/")) {
+            // Not yet moved to the key layout by StorageLayoutMigrator
+            return false;
+        }
+        Path localFile = fileStorageService.resolve(key);
+        if (!Files.exists(localFile)) {
+            return false;
+        }
+
+        // The slow part, done without locks; a copy left by an earlier demotion is reused
+        if (!coldStore.exists(key)) {
+            coldStore.put(key, localFile);
+        }
+
+        Boolean switched = transactionTemplate.execute(status -> {
+            FileBlob blob = fileBlobRepository.findByIdForUpdate(contentHash).orElse(null);
+            if (blob == null || !key.equals(blob.getFilePath()) || blob.getLastAccessedAt().isAfter(cutoff)
+                    || FileBlob.TIER_COLD.equals(blob.getTier())) {
+                return Boolean.FALSE;
+            }
+            blob.setTier(FileBlob.TIER_COLD);
+            filePurgeService.schedule(key, null, null);
+            return Boolean.TRUE;
+        });
+
+        if (Boolean.TRUE.equals(switched)) {
+            demoted.increment();
+            demotedBytes.increment(snapshot.getStoredSize());
+            return true;
+        }
+        if (!fileBlobRepository.existsById(contentHash)) {
+            // Purged while it was uploaded; its delete did not see the cold copy yet
+            coldStore.delete(key);
+        }
+        return false;
+    }
+
+    private void throttle() {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(1000L / maxFilesPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
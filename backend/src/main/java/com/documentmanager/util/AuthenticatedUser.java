@@ -0,0 +1,25 @@
+package com.documentmanager.util;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Principal of an authenticated request, carrying the user's id so that code below the
+ * controllers (e.g. replica routing) can tell whose request it is without a lookup.
+ */
+public class AuthenticatedUser extends User {
+
+    private final Long id;
+
+    public AuthenticatedUser(Long id, String username, String password, boolean enabled,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, enabled, true, true, true, authorities);
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
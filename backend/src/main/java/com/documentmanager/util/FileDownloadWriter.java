@@ -0,0 +1,200 @@
+package com.documentmanager.util;
+
+import com.documentmanager.dto.FileDownload;
+import com.documentmanager.service.impl.BlobCompressor;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a stored file to the response with conditional GET and single byte-range support.
+ *
+ * A matching If-None-Match (or If-Modified-Since) gets 304 without resolving the file. The
+ * body is handed to Tomcat's sendfile when the connector supports it, so the bytes go from
+ * the page cache to the socket without passing through the JVM; otherwise it is copied with
+ * FileChannel.transferTo. Multi-range requests are answered with the whole file.
+ *
+ * A compressed file is sent as stored, with Content-Encoding: gzip, to clients that accept
+ * gzip and ask for the whole file, so it still goes through sendfile. Range requests and
+ * other clients get the original bytes, decompressed on the fly through BlobCompressor, which
+ * meters it; range-read types such as PDF are not stored compressed in the first place.
+ */
+@Component
+public class FileDownloadWriter {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private BlobCompressor blobCompressor;
+
+    public void write(FileDownload download, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String encoding = download.getContentEncoding();
+        boolean passThrough = encoding != null && request.getHeader(HttpHeaders.RANGE) == null
+                && acceptsEncoding(request, encoding);
+        if (encoding != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        // The encoded representation is different bytes, so it gets its own entity tag
+        String etag = passThrough ? encodedEtag(download.getEtag(), encoding) : download.getEtag();
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        if (webRequest.checkNotModified(etag, download.getLastModified().toEpochMilli())) {
+            // Status 304 and validators are already set
+            return;
+        }
+
+        if (passThrough) {
+            long storedSize = Files.size(download.getPath());
+            writeHeaders(download, response, storedSize);
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            if (storedSize > 0 && !"HEAD".equals(request.getMethod())) {
+                sendFile(download, request, response, 0, storedSize - 1);
+            }
+            return;
+        }
+
+        long size = download.getSize();
+        long start = 0;
+        long end = size - 1;
+
+        List<HttpRange> ranges = rangesToServe(request, download);
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            try {
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                start = size;
+            }
+            if (start >= size || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+
+        long length = end - start + 1;
+        writeHeaders(download, response, length);
+
+        if (length <= 0 || "HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (encoding != null) {
+            writeDecompressed(download, response, start, length);
+        } else {
+            sendFile(download, request, response, start, end);
+        }
+    }
+
+    private void writeHeaders(FileDownload download, HttpServletResponse response, long length) {
+        response.setContentType(download.getContentType());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(download.getFilename(), StandardCharsets.UTF_8).build().toString());
+        response.setContentLengthLong(length);
+    }
+
+    private void sendFile(FileDownload download, HttpServletRequest request, HttpServletResponse response,
+                          long start, long end) throws IOException {
+        long length = end - start + 1;
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, download.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(download.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = channel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+    }
+
+    // A range of the original bytes costs inflating everything before it, hence no compressed PDFs
+    private void writeDecompressed(FileDownload download, HttpServletResponse response, long start, long length)
+            throws IOException {
+        try (InputStream stored = Files.newInputStream(download.getPath());
+             InputStream in = blobCompressor.decompress(stored)) {
+            in.skipNBytes(start);
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (tokens[0].trim().equalsIgnoreCase(encoding)) {
+                // gzip;q=0 means the client refuses it
+                return tokens.length < 2 || !tokens[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private String encodedEtag(String etag, String encoding) {
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    // Empty unless exactly what the client asked for can be served as one range
+    private List<HttpRange> rangesToServe(HttpServletRequest request, FileDownload download) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return List.of();
+        }
+        // If-Range: only honour the range if the client's copy is still current
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(download.getEtag())) {
+            return List.of();
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges : List.of();
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+}
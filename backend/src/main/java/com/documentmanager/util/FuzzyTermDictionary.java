@@ -0,0 +1,108 @@
+package com.documentmanager.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Term dictionary stored as a trie, mapping each term to the ids that contain it.
+ *
+ * Fuzzy lookup walks the trie while stepping a Levenshtein automaton (one DP row per
+ * trie depth). A branch is abandoned as soon as every state of the automaton exceeds
+ * the allowed distance, so only a small part of the dictionary is visited no matter how
+ * many terms it holds. Not thread-safe; callers synchronize.
+ */
+public class FuzzyTermDictionary {
+
+    private final Node root = new Node();
+    private int termCount;
+
+    public void add(String term, Long id) {
+        Node node = root;
+        for (int i = 0; i < term.length(); i++) {
+            node = node.children.computeIfAbsent(term.charAt(i), c -> new Node());
+        }
+        if (node.ids == null) {
+            node.ids = new HashSet<>();
+            termCount++;
+        }
+        node.ids.add(id);
+    }
+
+    public void remove(String term, Long id) {
+        Node node = root;
+        for (int i = 0; i < term.length() && node != null; i++) {
+            node = node.children.get(term.charAt(i));
+        }
+        if (node != null && node.ids != null) {
+            node.ids.remove(id);
+            if (node.ids.isEmpty()) {
+                node.ids = null;
+                termCount--;
+            }
+        }
+    }
+
+    public int size() {
+        return termCount;
+    }
+
+    /**
+     * Ids of all terms within {@code maxDistance} edits of {@code term}.
+     */
+    public Set<Long> search(String term, int maxDistance) {
+        Set<Long> result = new HashSet<>();
+        if (maxDistance == 0) {
+            Node node = root;
+            for (int i = 0; i < term.length() && node != null; i++) {
+                node = node.children.get(term.charAt(i));
+            }
+            if (node != null && node.ids != null) {
+                result.addAll(node.ids);
+            }
+            return result;
+        }
+
+        int[] initialRow = new int[term.length() + 1];
+        for (int i = 0; i < initialRow.length; i++) {
+            initialRow[i] = i;
+        }
+        for (Map.Entry<Character, Node> child : root.children.entrySet()) {
+            searchRecursive(child.getValue(), child.getKey(), term, initialRow, maxDistance, result);
+        }
+        return result;
+    }
+
+    private void searchRecursive(Node node, char letter, String term, int[] previousRow, int maxDistance, Set<Long> result) {
+        int columns = term.length() + 1;
+        int[] currentRow = new int[columns];
+        currentRow[0] = previousRow[0] + 1;
+
+        int rowMin = currentRow[0];
+        for (int i = 1; i < columns; i++) {
+            int insertCost = currentRow[i - 1] + 1;
+            int deleteCost = previousRow[i] + 1;
+            int replaceCost = previousRow[i - 1] + (term.charAt(i - 1) == letter ? 0 : 1);
+            currentRow[i] = Math.min(Math.min(insertCost, deleteCost), replaceCost);
+            rowMin = Math.min(rowMin, currentRow[i]);
+        }
+
+        if (currentRow[columns - 1] <= maxDistance && node.ids != null) {
+            result.addAll(node.ids);
+        }
+
+        // No state of the automaton can get back under the limit below this node
+        if (rowMin > maxDistance) {
+            return;
+        }
+        for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+            searchRecursive(child.getValue(), child.getKey(), term, currentRow, maxDistance, result);
+        }
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private Set<Long> ids;
+    }
+}
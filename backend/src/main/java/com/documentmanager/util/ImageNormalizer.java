@@ -0,0 +1,361 @@
+package com.documentmanager.util;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Decodes an image with the installed ImageIO plugins (TwelveMonkeys JPEG and TIFF), turns it
+ * upright according to its orientation tag, converts it to 8-bit sRGB or grayscale and scales
+ * it down. Scaling is done in halving steps with bilinear filtering, which keeps thin strokes
+ * readable for OCR; very large images are subsampled while decoding so the decoded raster
+ * stays within about twice the target size in each dimension.
+ */
+public final class ImageNormalizer {
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+    private static final String TIFF_METADATA = "com_sun_media_imageio_plugins_tiff_image_1.0";
+
+    private ImageNormalizer() {}
+
+    /**
+     * What the optimizer needs to know about an image, read from its header and metadata.
+     */
+    public static class ImageInfo {
+        private final String formatName;
+        private final int width;
+        private final int height;
+        private final int pages;
+        private final int orientation;
+        private final double dpi;
+        private final boolean standardColor;
+
+        ImageInfo(String formatName, int width, int height, int pages, int orientation, double dpi,
+                  boolean standardColor) {
+            this.formatName = formatName;
+            this.width = width;
+            this.height = height;
+            this.pages = pages;
+            this.orientation = orientation;
+            this.dpi = dpi;
+            this.standardColor = standardColor;
+        }
+
+        public String getFormatName() {
+            return formatName;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        // EXIF/TIFF orientation, 1 when upright or unknown
+        public int getOrientation() {
+            return orientation;
+        }
+
+        // Horizontal resolution recorded in the file, 0 if none
+        public double getDpi() {
+            return dpi;
+        }
+
+        // 8 bits per component, sRGB or gray, opaque
+        public boolean isStandardColor() {
+            return standardColor;
+        }
+    }
+
+    /**
+     * Read dimensions, orientation and pixel format without decoding the pixels.
+     * Returns null if no installed reader understands the file.
+     */
+    public static ImageInfo inspect(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            ImageReader reader = readerFor(in);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                IIOMetadata metadata = reader.getImageMetadata(0);
+                ImageTypeSpecifier rawType = reader.getRawImageType(0);
+                return new ImageInfo(
+                        reader.getFormatName().toLowerCase(Locale.ROOT),
+                        reader.getWidth(0),
+                        reader.getHeight(0),
+                        reader.getNumImages(true),
+                        orientation(metadata),
+                        dpi(metadata),
+                        rawType != null && isStandard(rawType.getColorModel()));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Write the first image of source to target, upright, in 8-bit sRGB or gray and scaled
+     * by the given factor (at most 1). JPEG input is written as JPEG of the given quality and
+     * everything else as PNG. Returns the content type of the written image.
+     */
+    public static String normalize(Path source, ImageInfo info, double scale, float jpegQuality, Path target)
+            throws IOException {
+        int targetWidth = Math.max(1, (int) Math.round(info.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(info.getHeight() * scale));
+
+        BufferedImage decoded;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            ImageReader reader = readerFor(in);
+            if (reader == null) {
+                throw new IOException("No image reader for " + source.getFileName());
+            }
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = (int) Math.floor(1 / (scale * 2));
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        boolean gray = decoded.getColorModel().getNumColorComponents() == 1;
+        int type = gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+        BufferedImage image = redraw(decoded, decoded.getWidth(), decoded.getHeight(), type);
+        decoded = null;
+
+        // Halve while that stays above the target, then one last step to the exact size
+        while (image.getWidth() / 2 >= targetWidth && image.getHeight() / 2 >= targetHeight) {
+            image = redraw(image, image.getWidth() / 2, image.getHeight() / 2, type);
+        }
+        if (image.getWidth() != targetWidth || image.getHeight() != targetHeight) {
+            image = redraw(image, targetWidth, targetHeight, type);
+        }
+        image = orient(image, info.getOrientation(), type);
+
+        boolean jpeg = "jpeg".equals(info.getFormatName()) || "jpg".equals(info.getFormatName());
+        write(image, jpeg ? "jpeg" : "png", jpegQuality, target);
+        return jpeg ? "image/jpeg" : "image/png";
+    }
+
+    private static ImageReader readerFor(ImageInputStream in) {
+        if (in == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, false, false);
+        return reader;
+    }
+
+    private static boolean isStandard(ColorModel colorModel) {
+        ColorSpace colorSpace = colorModel.getColorSpace();
+        boolean knownSpace = colorSpace.isCS_sRGB() || colorSpace == ColorSpace.getInstance(ColorSpace.CS_GRAY);
+        if (!knownSpace || colorModel.hasAlpha()) {
+            return false;
+        }
+        for (int size : colorModel.getComponentSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Draws onto a white opaque image of the given type, which also converts color space and depth
+    private static BufferedImage redraw(BufferedImage source, int width, int height, int type) {
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    // Maps the stored pixel grid to the displayed one for EXIF orientations 2 to 8
+    private static BufferedImage orient(BufferedImage image, int orientation, int type) {
+        if (orientation < 2 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);
+        };
+        boolean swap = orientation >= 5;
+        BufferedImage target = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private static void write(BufferedImage image, String format, float jpegQuality, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static int orientation(IIOMetadata metadata) {
+        if (metadata == null || metadata.getNativeMetadataFormatName() == null) {
+            return 1;
+        }
+        try {
+            String format = metadata.getNativeMetadataFormatName();
+            if (JPEG_METADATA.equals(format)) {
+                return jpegOrientation(metadata.getAsTree(format));
+            }
+            if (TIFF_METADATA.equals(format)) {
+                return tiffOrientation(metadata.getAsTree(format));
+            }
+        } catch (RuntimeException e) {
+            // Damaged or unusual metadata: treat the image as upright
+        }
+        return 1;
+    }
+
+    // The EXIF block is an APP1 segment ("Exif\0\0" followed by a TIFF header and IFD0)
+    private static int jpegOrientation(Node root) {
+        for (Node sequence = root.getFirstChild(); sequence != null; sequence = sequence.getNextSibling()) {
+            if (!"markerSequence".equals(sequence.getNodeName())) {
+                continue;
+            }
+            for (Node marker = sequence.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                Node tag = marker.getAttributes() != null ? marker.getAttributes().getNamedItem("MarkerTag") : null;
+                if (tag != null && "225".equals(tag.getNodeValue())
+                        && ((IIOMetadataNode) marker).getUserObject() instanceof byte[] data) {
+                    int orientation = exifOrientation(data);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static int exifOrientation(byte[] data) {
+        if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f') {
+            return 0;
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(data, 6, data.length - 6).slice();
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff.getInt(4);
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            return 0;
+        }
+        int entries = tiff.getShort(ifd) & 0xffff;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                break;
+            }
+            if ((tiff.getShort(entry) & 0xffff) == TAG_ORIENTATION) {
+                return tiff.getShort(entry + 8) & 0xffff;
+            }
+        }
+        return 0;
+    }
+
+    private static int tiffOrientation(Node root) {
+        Node ifd = root.getFirstChild();
+        for (Node field = ifd != null ? ifd.getFirstChild() : null; field != null; field = field.getNextSibling()) {
+            NamedNodeMap attributes = field.getAttributes();
+            Node number = attributes != null ? attributes.getNamedItem("number") : null;
+            if (number != null && String.valueOf(TAG_ORIENTATION).equals(number.getNodeValue())) {
+                Node values = field.getFirstChild();
+                Node value = values != null ? values.getFirstChild() : null;
+                if (value != null && value.getAttributes().getNamedItem("value") != null) {
+                    return Integer.parseInt(value.getAttributes().getNamedItem("value").getNodeValue());
+                }
+            }
+        }
+        return 1;
+    }
+
+    // The standard tree records millimetres per pixel
+    private static double dpi(IIOMetadata metadata) {
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+            return 0;
+        }
+        Node root = metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!"Dimension".equals(node.getNodeName())) {
+                continue;
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if ("HorizontalPixelSize".equals(child.getNodeName())) {
+                    try {
+                        double millimetres = Double.parseDouble(child.getAttributes().getNamedItem("value").getNodeValue());
+                        return millimetres > 0 ? 25.4 / millimetres : 0;
+                    } catch (RuntimeException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.documentmanager.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures over word shingles, with LSH banding.
+ *
+ * Two texts agree on each signature position with probability equal to the Jaccard
+ * similarity of their shingle sets. Splitting the signature into {@link #BANDS} bands of
+ * {@link #ROWS} rows gives bucket keys such that texts above roughly 0.45 similarity
+ * share at least one bucket with high probability, while dissimilar texts rarely do.
+ */
+public final class MinHash {
+
+    public static final int NUM_HASHES = 128;
+    public static final int BANDS = 32;
+    public static final int ROWS = NUM_HASHES / BANDS;
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDCAFEL);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private MinHash() {}
+
+    /**
+     * Signature of the text, or null if it has no words.
+     */
+    public static int[] signature(String text) {
+        Set<Long> shingles = shingles(TextNormalizer.tokenize(text));
+        if (shingles.isEmpty()) {
+            return null;
+        }
+
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long shingle : shingles) {
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int h = (int) mix(shingle ^ SEEDS[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * One bucket key per band; two signatures are candidates if any key matches.
+     */
+    public static long[] bandKeys(int[] signature) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long h = band;
+            for (int row = 0; row < ROWS; row++) {
+                h = mix(h * 31 + signature[band * ROWS + row]);
+            }
+            keys[band] = h;
+        }
+        return keys;
+    }
+
+    /**
+     * Estimated Jaccard similarity: fraction of signature positions that agree.
+     */
+    public static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / NUM_HASHES;
+    }
+
+    public static byte[] toBytes(int[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(signature.length * Integer.BYTES);
+        for (int value : signature) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    public static int[] fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] signature = new int[bytes.length / Integer.BYTES];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = buffer.getInt();
+        }
+        return signature;
+    }
+
+    private static Set<Long> shingles(List<String> tokens) {
+        Set<Long> shingles = new HashSet<>();
+        if (tokens.size() < SHINGLE_SIZE) {
+            for (String token : tokens) {
+                shingles.add(hash(token));
+            }
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= tokens.size(); i++) {
+            long h = 0;
+            for (int j = 0; j < SHINGLE_SIZE; j++) {
+                h = mix(h ^ hash(tokens.get(i + j)));
+            }
+            shingles.add(h);
+        }
+        return shingles;
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String token) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            h ^= token.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
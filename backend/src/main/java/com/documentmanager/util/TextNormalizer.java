@@ -0,0 +1,60 @@
+package com.documentmanager.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Folds text for matching: Turkish-aware lower-casing (İ -> i, I -> ı) followed by
+ * diacritic stripping, so "İSTANBUL", "Istanbul" and "istanbul" all fold to "istanbul"
+ * and "çalışma" folds to "calisma".
+ */
+public final class TextNormalizer {
+
+    private static final Locale TURKISH = Locale.forLanguageTag("tr");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private TextNormalizer() {}
+
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        String lower = text.toLowerCase(TURKISH);
+        StringBuilder sb = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            switch (c) {
+                case 'ı': sb.append('i'); break;
+                case 'ş': sb.append('s'); break;
+                case 'ğ': sb.append('g'); break;
+                case 'ç': sb.append('c'); break;
+                case 'ö': sb.append('o'); break;
+                case 'ü': sb.append('u'); break;
+                default: sb.append(c);
+            }
+        }
+        // Strip any remaining accents (â, î, û, é, ...) and the dot left over from "i̇"
+        String decomposed = Normalizer.normalize(sb, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("");
+    }
+
+    /**
+     * Split folded text into word tokens.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : NON_WORD.split(fold(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
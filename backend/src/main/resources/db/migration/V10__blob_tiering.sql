@@ -0,0 +1,12 @@
+-- Hot/cold tiering: tier is HOT while the local copy is the only one and COLD once the blob
+-- has been copied to the cold store and its local copy dropped. last_accessed_at is
+-- written in batches, so it is accurate to about a minute.
+ALTER TABLE file_blobs ADD COLUMN tier VARCHAR(8) NOT NULL DEFAULT 'HOT';
+ALTER TABLE file_blobs ADD COLUMN last_accessed_at TIMESTAMP(6);
+UPDATE file_blobs SET last_accessed_at = created_at;
+ALTER TABLE file_blobs ALTER COLUMN last_accessed_at SET NOT NULL;
+
+CREATE INDEX idx_file_blobs_tier_last_accessed ON file_blobs (tier, last_accessed_at);
+
+-- Local copies dropped after demotion are purged like other files but belong to no user
+ALTER TABLE file_tombstones ALTER COLUMN user_id DROP NOT NULL;
@@ -0,0 +1,5 @@
+-- Oversized images are replaced by an optimized copy after upload (ImageOptimizationService).
+-- original_file_size keeps the uploaded size and marks the attachment as optimized;
+-- users.optimize_images overrides image.optimize.enabled per user (null follows it).
+ALTER TABLE file_attachments ADD COLUMN original_file_size BIGINT;
+ALTER TABLE users ADD COLUMN optimize_images BOOLEAN;
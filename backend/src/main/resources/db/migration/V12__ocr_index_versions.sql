@@ -0,0 +1,7 @@
+-- Version of each user's OCR text, bumped in the transaction that changes it. Every instance
+-- compares it with the version its in-memory fuzzy index was built from and rebuilds when
+-- they differ, so an update is seen everywhere and not only by the instance that relays it.
+CREATE TABLE ocr_index_versions (
+    user_id  BIGINT NOT NULL PRIMARY KEY REFERENCES users (id),
+    version  BIGINT NOT NULL
+);
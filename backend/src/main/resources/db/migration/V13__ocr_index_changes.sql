@@ -0,0 +1,13 @@
+-- The document behind each ocr_index_versions increment, written in the same statement, so an
+-- in-memory fuzzy index can re-read just the documents changed since its version instead of
+-- being rebuilt. Rows are deleted after ocr-index.change-retention-hours; an index that far
+-- behind finds a gap in the versions and is rebuilt.
+CREATE TABLE ocr_index_changes (
+    user_id      BIGINT    NOT NULL REFERENCES users (id),
+    version      BIGINT    NOT NULL,
+    document_id  BIGINT    NOT NULL,
+    created_at   TIMESTAMP NOT NULL,
+    PRIMARY KEY (user_id, version)
+);
+
+CREATE INDEX idx_ocr_index_changes_created_at ON ocr_index_changes (created_at);
@@ -0,0 +1,36 @@
+-- Databases created by hibernate.ddl-auto=update keep their old tables through V1
+-- (CREATE TABLE IF NOT EXISTS), so the columns V1 defines but the old schema lacked are
+-- added here before V2 indexes them. On databases created by V1 this changes nothing.
+
+ALTER TABLE documents ADD COLUMN IF NOT EXISTS search_text VARCHAR(2000);
+ALTER TABLE document_ocr_texts ADD COLUMN IF NOT EXISTS search_text TEXT;
+
+-- OCR text moves from the legacy documents.ocr_text column to document_ocr_texts. Its
+-- search_text is left null and filled by SearchColumnBackfillService after startup.
+DO $$
+DECLARE
+    column_type TEXT;
+BEGIN
+    SELECT data_type INTO column_type FROM information_schema.columns
+    WHERE table_schema = current_schema() AND table_name = 'documents' AND column_name = 'ocr_text';
+
+    IF column_type IS NULL THEN
+        RETURN;
+    END IF;
+
+    IF column_type = 'oid' THEN
+        -- @Lob without a column definition was stored as a large object
+        INSERT INTO document_ocr_texts (document_id, text)
+        SELECT d.id, convert_from(lo_get(d.ocr_text), 'UTF8') FROM documents d
+        WHERE d.ocr_text IS NOT NULL
+        ON CONFLICT (document_id) DO NOTHING;
+        PERFORM lo_unlink(d.ocr_text) FROM documents d WHERE d.ocr_text IS NOT NULL;
+    ELSE
+        INSERT INTO document_ocr_texts (document_id, text)
+        SELECT d.id, d.ocr_text::text FROM documents d
+        WHERE d.ocr_text IS NOT NULL
+        ON CONFLICT (document_id) DO NOTHING;
+    END IF;
+
+    ALTER TABLE documents DROP COLUMN ocr_text;
+END $$;
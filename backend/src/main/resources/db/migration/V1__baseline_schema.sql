@@ -0,0 +1,73 @@
+-- Schema as previously generated by hibernate.ddl-auto=update.
+-- Databases created that way are baselined at version 0, so this script runs on them too:
+-- every statement is idempotent.
+
+CREATE TABLE IF NOT EXISTS users (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username    VARCHAR(255) NOT NULL UNIQUE,
+    email       VARCHAR(255) NOT NULL UNIQUE,
+    password    VARCHAR(255) NOT NULL,
+    first_name  VARCHAR(255) NOT NULL,
+    last_name   VARCHAR(255) NOT NULL,
+    created_at  TIMESTAMP(6) NOT NULL,
+    updated_at  TIMESTAMP(6) NOT NULL,
+    active      BOOLEAN      NOT NULL
+);
+
+CREATE SEQUENCE IF NOT EXISTS documents_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS file_attachments_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS documents (
+    id                BIGINT        NOT NULL PRIMARY KEY,
+    title             VARCHAR(255)  NOT NULL,
+    number            VARCHAR(255)  NOT NULL,
+    date              DATE          NOT NULL,
+    description       VARCHAR(1000),
+    created_at        TIMESTAMP(6)  NOT NULL,
+    updated_at        TIMESTAMP(6)  NOT NULL,
+    user_id           BIGINT        NOT NULL REFERENCES users (id),
+    ocr_processed     BOOLEAN,
+    ocr_processed_at  TIMESTAMP(6),
+    search_text       VARCHAR(2000)
+);
+
+CREATE TABLE IF NOT EXISTS file_attachments (
+    id                 BIGINT       NOT NULL PRIMARY KEY,
+    original_filename  VARCHAR(255) NOT NULL,
+    stored_filename    VARCHAR(255) NOT NULL,
+    content_type       VARCHAR(255) NOT NULL,
+    file_size          BIGINT       NOT NULL,
+    file_path          VARCHAR(255) NOT NULL,
+    uploaded_at        TIMESTAMP(6) NOT NULL,
+    document_id        BIGINT       NOT NULL REFERENCES documents (id)
+);
+
+CREATE TABLE IF NOT EXISTS document_ocr_texts (
+    document_id  BIGINT NOT NULL PRIMARY KEY,
+    text         TEXT,
+    search_text  TEXT
+);
+
+CREATE TABLE IF NOT EXISTS document_signatures (
+    document_id  BIGINT       NOT NULL PRIMARY KEY,
+    user_id      BIGINT       NOT NULL,
+    signature    BYTEA        NOT NULL,
+    computed_at  TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS signature_buckets (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id      BIGINT NOT NULL,
+    document_id  BIGINT NOT NULL,
+    bucket_key   BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_signature_buckets_user_key ON signature_buckets (user_id, bucket_key);
+CREATE INDEX IF NOT EXISTS idx_signature_buckets_document ON signature_buckets (document_id);
+
+-- Documents and attachments used to get IDENTITY ids; start the sequences that replaced
+-- them above every existing id (they hand out blocks of 50)
+SELECT setval('documents_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM documents) + 50,
+                                        (SELECT last_value FROM documents_seq)));
+SELECT setval('file_attachments_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM file_attachments) + 50,
+                                               (SELECT last_value FROM file_attachments_seq)));
@@ -0,0 +1,20 @@
+-- Indexes behind the queries in DocumentRepository. Every
+-- list, scroll, facet and search query is scoped to one user.
+
+-- Per-user listing by document date and keyset scrolling (ORDER BY created_at DESC, id DESC)
+CREATE INDEX IF NOT EXISTS idx_documents_user_date ON documents (user_id, date);
+CREATE INDEX IF NOT EXISTS idx_documents_user_created_id ON documents (user_id, created_at, id);
+
+-- Pending OCR: only unprocessed rows are indexed, so the index stays small as OCR catches up.
+-- Documents without a file are also unprocessed; the attachment check joins through the
+-- unique document_id index below.
+CREATE INDEX IF NOT EXISTS idx_documents_ocr_pending ON documents (user_id) WHERE ocr_processed = false;
+
+-- At most one attachment per document; also serves the LEFT JOIN from documents
+CREATE UNIQUE INDEX IF NOT EXISTS uq_file_attachments_document ON file_attachments (document_id);
+DROP INDEX IF EXISTS idx_file_attachments_document;
+
+-- Substring search (LIKE '%term%') over the folded search columns
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_documents_search_text_trgm ON documents USING gin (search_text gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_document_ocr_texts_search_text_trgm ON document_ocr_texts USING gin (search_text gin_trgm_ops);
@@ -0,0 +1,21 @@
+-- Per-user document counters, kept in step with documents by UserStatsService
+-- and periodically reconciled against the real counts.
+CREATE TABLE IF NOT EXISTS user_stats (
+    user_id              BIGINT       NOT NULL PRIMARY KEY REFERENCES users (id),
+    document_count       BIGINT       NOT NULL,
+    ocr_processed_count  BIGINT       NOT NULL,
+    ocr_pending_count    BIGINT       NOT NULL,
+    updated_at           TIMESTAMP(6) NOT NULL
+);
+
+INSERT INTO user_stats (user_id, document_count, ocr_processed_count, ocr_pending_count, updated_at)
+SELECT u.id,
+       COUNT(d.id),
+       COUNT(d.id) FILTER (WHERE d.ocr_processed = true),
+       COUNT(d.id) FILTER (WHERE d.ocr_processed = false AND fa.id IS NOT NULL),
+       now()
+FROM users u
+LEFT JOIN documents d ON d.user_id = u.id
+LEFT JOIN file_attachments fa ON fa.document_id = d.id
+GROUP BY u.id
+ON CONFLICT (user_id) DO NOTHING;
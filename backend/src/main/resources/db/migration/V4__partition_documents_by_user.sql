@@ -0,0 +1,93 @@
+-- Hash-partition documents and document_ocr_texts by user_id into 16 partitions each.
+-- Every list, search and count query filters on one user, so it is pruned to a single
+-- partition, and vacuum/analyze work per partition instead of over the whole table.
+--
+-- A partitioned table's primary key must contain the partition key, so the keys become
+-- (id, user_id) and (document_id, user_id); ids still come from sequences and stay unique.
+-- Foreign keys to documents(id) are no longer possible and are dropped.
+-- This rewrites both tables and should run during a maintenance window on large installs.
+-- OCR text of the legacy documents.ocr_text column was already moved by V1_1.
+
+-- Foreign keys pointing at documents (e.g. file_attachments.document_id)
+DO $$
+DECLARE
+    fk RECORD;
+BEGIN
+    FOR fk IN SELECT conrelid::regclass AS table_name, conname FROM pg_constraint
+              WHERE contype = 'f' AND confrelid = 'documents'::regclass LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', fk.table_name, fk.conname);
+    END LOOP;
+END $$;
+
+-- documents
+
+CREATE TABLE documents_partitioned (
+    id                BIGINT        NOT NULL,
+    title             VARCHAR(255)  NOT NULL,
+    number            VARCHAR(255)  NOT NULL,
+    date              DATE          NOT NULL,
+    description       VARCHAR(1000),
+    created_at        TIMESTAMP(6)  NOT NULL,
+    updated_at        TIMESTAMP(6)  NOT NULL,
+    user_id           BIGINT        NOT NULL REFERENCES users (id),
+    ocr_processed     BOOLEAN,
+    ocr_processed_at  TIMESTAMP(6),
+    search_text       VARCHAR(2000),
+    PRIMARY KEY (id, user_id)
+) PARTITION BY HASH (user_id);
+
+DO $$
+BEGIN
+    FOR i IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE documents_p%s PARTITION OF documents_partitioned ' ||
+                       'FOR VALUES WITH (MODULUS 16, REMAINDER %s)', lpad(i::text, 2, '0'), i);
+    END LOOP;
+END $$;
+
+INSERT INTO documents_partitioned (id, title, number, date, description, created_at, updated_at,
+                                   user_id, ocr_processed, ocr_processed_at, search_text)
+SELECT id, title, number, date, description, created_at, updated_at,
+       user_id, ocr_processed, ocr_processed_at, search_text
+FROM documents;
+
+DROP TABLE documents;
+ALTER TABLE documents_partitioned RENAME TO documents;
+ALTER INDEX documents_partitioned_pkey RENAME TO documents_pkey;
+
+CREATE INDEX idx_documents_user_date ON documents (user_id, date);
+CREATE INDEX idx_documents_user_created_id ON documents (user_id, created_at, id);
+CREATE INDEX idx_documents_ocr_pending ON documents (user_id) WHERE ocr_processed = false;
+CREATE INDEX idx_documents_search_text_trgm ON documents USING gin (search_text gin_trgm_ops);
+
+-- document_ocr_texts, partitioned the same way so OCR joins prune to the same user
+
+CREATE TABLE document_ocr_texts_partitioned (
+    document_id  BIGINT NOT NULL,
+    user_id      BIGINT NOT NULL,
+    text         TEXT,
+    search_text  TEXT,
+    PRIMARY KEY (document_id, user_id)
+) PARTITION BY HASH (user_id);
+
+DO $$
+BEGIN
+    FOR i IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE document_ocr_texts_p%s PARTITION OF document_ocr_texts_partitioned ' ||
+                       'FOR VALUES WITH (MODULUS 16, REMAINDER %s)', lpad(i::text, 2, '0'), i);
+    END LOOP;
+END $$;
+
+-- Rows of deleted documents are left behind
+INSERT INTO document_ocr_texts_partitioned (document_id, user_id, text, search_text)
+SELECT o.document_id, d.user_id, o.text, o.search_text
+FROM document_ocr_texts o
+JOIN documents d ON d.id = o.document_id;
+
+DROP TABLE document_ocr_texts;
+ALTER TABLE document_ocr_texts_partitioned RENAME TO document_ocr_texts;
+ALTER INDEX document_ocr_texts_partitioned_pkey RENAME TO document_ocr_texts_pkey;
+
+CREATE INDEX idx_document_ocr_texts_search_text_trgm ON document_ocr_texts USING gin (search_text gin_trgm_ops);
+
+ANALYZE documents;
+ANALYZE document_ocr_texts;
@@ -0,0 +1,19 @@
+-- Transactional outbox: side effects of a document change are recorded in the same
+-- transaction as the change and dispatched after commit by OutboxRelay.
+CREATE SEQUENCE outbox_events_seq INCREMENT BY 50;
+
+CREATE TABLE outbox_events (
+    id            BIGINT        NOT NULL PRIMARY KEY,
+    event_type    VARCHAR(50)   NOT NULL,
+    user_id       BIGINT        NOT NULL,
+    document_id   BIGINT        NOT NULL,
+    created_at    TIMESTAMP(6)  NOT NULL,
+    available_at  TIMESTAMP(6)  NOT NULL,
+    processed_at  TIMESTAMP(6),
+    attempts      INTEGER       NOT NULL,
+    last_error    VARCHAR(1000)
+);
+
+-- The relay only ever looks at undispatched events
+CREATE INDEX idx_outbox_events_pending ON outbox_events (available_at, id) WHERE processed_at IS NULL;
+CREATE INDEX idx_outbox_events_processed ON outbox_events (processed_at) WHERE processed_at IS NOT NULL;
@@ -0,0 +1,17 @@
+-- Files whose attachment was removed or replaced. The row is written in the same
+-- transaction as the change and FilePurgeService deletes the file after commit, so a
+-- rollback keeps the file and disk I/O never runs inside a request transaction.
+CREATE SEQUENCE file_tombstones_seq INCREMENT BY 50;
+
+CREATE TABLE file_tombstones (
+    id            BIGINT        NOT NULL PRIMARY KEY,
+    file_path     VARCHAR(255)  NOT NULL,
+    user_id       BIGINT        NOT NULL,
+    document_id   BIGINT        NOT NULL,
+    deleted_at    TIMESTAMP(6)  NOT NULL,
+    purge_after   TIMESTAMP(6)  NOT NULL,
+    attempts      INTEGER       NOT NULL,
+    last_error    VARCHAR(1000)
+);
+
+CREATE INDEX idx_file_tombstones_purge_after ON file_tombstones (purge_after, id);
@@ -0,0 +1,19 @@
+-- Content-addressable storage: one file per distinct SHA-256, shared by every attachment
+-- with the same content. ref_count is the number of attachments (and in-flight imports)
+-- holding the blob; it is changed in the same transaction as the attachment rows.
+CREATE TABLE file_blobs (
+    content_hash  VARCHAR(64)   NOT NULL PRIMARY KEY,
+    file_path     VARCHAR(255)  NOT NULL,
+    file_size     BIGINT        NOT NULL,
+    ref_count     INTEGER       NOT NULL,
+    created_at    TIMESTAMP(6)  NOT NULL
+);
+
+-- NULL for files stored before this migration, which keep their own path
+ALTER TABLE file_attachments ADD COLUMN content_hash VARCHAR(64);
+CREATE INDEX idx_file_attachments_content_hash ON file_attachments (content_hash);
+
+-- A tombstone with a content hash releases a blob rather than a single file. Imports that
+-- fail before their documents are saved have no document id.
+ALTER TABLE file_tombstones ADD COLUMN content_hash VARCHAR(64);
+ALTER TABLE file_tombstones ALTER COLUMN document_id DROP NOT NULL;
@@ -0,0 +1,17 @@
+-- Resumable uploads: chunks are appended to a staging file, received_bytes records how far
+-- the client got, and the session is removed when the upload is completed or expires.
+CREATE TABLE upload_sessions (
+    id              VARCHAR(36)   NOT NULL PRIMARY KEY,
+    user_id         BIGINT        NOT NULL REFERENCES users (id),
+    document_id     BIGINT        NOT NULL,
+    filename        VARCHAR(255)  NOT NULL,
+    content_type    VARCHAR(255)  NOT NULL,
+    total_size      BIGINT        NOT NULL,
+    received_bytes  BIGINT        NOT NULL,
+    sha256          VARCHAR(64),
+    created_at      TIMESTAMP(6)  NOT NULL,
+    updated_at      TIMESTAMP(6)  NOT NULL,
+    expires_at      TIMESTAMP(6)  NOT NULL
+);
+
+CREATE INDEX idx_upload_sessions_expires_at ON upload_sessions (expires_at);
@@ -0,0 +1,5 @@
+-- Blobs may be stored compressed (file_path ends in .gz); stored_size is the size on disk,
+-- file_size stays the size of the original content.
+ALTER TABLE file_blobs ADD COLUMN stored_size BIGINT;
+UPDATE file_blobs SET stored_size = file_size;
+ALTER TABLE file_blobs ALTER COLUMN stored_size SET NOT NULL;
@@ -0,0 +1,69 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.dto.CursorPage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CursorPageTests {
+
+    @Test
+    void cursorRoundTrips() {
+        LocalDateTime createdAt = LocalDateTime.of(2026, 3, 14, 9, 26, 53, 589_793_000);
+        CursorPage.Position position = CursorPage.decodeCursor(CursorPage.encodeCursor(createdAt, 42L));
+        assertEquals(createdAt, position.getCreatedAt());
+        assertEquals(42L, position.getId());
+    }
+
+    @Test
+    void cursorRoundTripsOnAWholeMinute() {
+        // LocalDateTime.toString drops zero seconds ("2026-01-01T00:00")
+        LocalDateTime createdAt = LocalDateTime.of(2026, 1, 1, 0, 0);
+        assertEquals(createdAt, CursorPage.decodeCursor(CursorPage.encodeCursor(createdAt, 1L)).getCreatedAt());
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = CursorPage.encodeCursor(LocalDateTime.of(2026, 1, 1, 12, 0, 0, 123_456_789), Long.MAX_VALUE);
+        assertEquals(cursor, cursor.replaceAll("[^A-Za-z0-9_-]", ""));
+    }
+
+    @Test
+    void invalidBase64IsRejected() {
+        assertInvalid("not a cursor!");
+    }
+
+    @Test
+    void truncatedCursorIsRejected() {
+        String cursor = CursorPage.encodeCursor(LocalDateTime.of(2026, 1, 1, 12, 0), 7L);
+        assertInvalid(cursor.substring(0, cursor.length() / 2));
+    }
+
+    @Test
+    void tamperedPositionIsRejected() {
+        assertInvalid(encode("2026-01-01T12:00|7 OR 1=1"));
+        assertInvalid(encode("2026-13-01T12:00|7"));
+        assertInvalid(encode("2026-01-01T12:00"));
+        assertInvalid(encode("|7"));
+    }
+
+    @Test
+    void emptyAndNullCursorsAreRejected() {
+        assertInvalid("");
+        assertInvalid(null);
+    }
+
+    private void assertInvalid(String cursor) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> CursorPage.decodeCursor(cursor));
+        assertEquals("Invalid cursor", e.getMessage());
+    }
+
+    private String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,72 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.dto.DocumentFilter;
+import com.documentmanager.dto.DocumentResponse;
+import com.documentmanager.dto.FacetedPage;
+import com.documentmanager.entity.Document;
+import com.documentmanager.entity.FileAttachment;
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.DocumentRepository;
+import com.documentmanager.repository.UserRepository;
+import com.documentmanager.service.DocumentService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class DocumentListQueryCountTests {
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void documentPageUsesConstantNumberOfStatements() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User user = userRepository.save(new User("qc_" + suffix, "qc_" + suffix + "@example.com",
+                "password", "Query", "Count"));
+        for (int i = 0; i < 30; i++) {
+            Document document = new Document("Document " + i, "N-" + i, LocalDate.of(2020 + i % 3, 1, 1), null, user);
+            document.setFileAttachment(new FileAttachment("scan" + i + ".pdf", "scan" + i + ".pdf",
+                    "application/pdf", 1024L, "/tmp/scan" + i + ".pdf", document));
+            documentRepository.save(document);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        FacetedPage<DocumentResponse> page = documentService.getDocumentsByUser(
+                user, "", new DocumentFilter(), PageRequest.of(0, 20));
+
+        assertEquals(20, page.getContent().size());
+        assertTrue(page.getContent().stream().allMatch(DocumentResponse::isHasFile));
+        // page select + count + facet aggregate, independent of the page size
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,159 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.dto.FileDownload;
+import com.documentmanager.service.impl.BlobCompressor;
+import com.documentmanager.util.FileDownloadWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileDownloadWriterTests {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+    private static final String ETAG = "\"abc123\"";
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FileDownloadWriter writer = new FileDownloadWriter();
+    private FileDownload download;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        BlobCompressor blobCompressor = new BlobCompressor();
+        ReflectionTestUtils.setField(blobCompressor, "meterRegistry", meterRegistry);
+        blobCompressor.init();
+        ReflectionTestUtils.setField(writer, "blobCompressor", blobCompressor);
+
+        Path file = Files.writeString(tempDir.resolve("scan.pdf"), CONTENT);
+        download = new FileDownload(file, "scan.pdf", "application/pdf", CONTENT.length(), ETAG,
+                Instant.parse("2026-01-01T00:00:00Z"), null);
+    }
+
+    @Test
+    void servesWholeFileWithValidators() throws IOException {
+        MockHttpServletResponse response = get(new MockHttpServletRequest("GET", "/download"));
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals(ETAG, response.getHeader("ETag"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    }
+
+    @Test
+    void servesSingleRange() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=5-9");
+        MockHttpServletResponse response = get(request);
+        assertEquals(206, response.getStatus());
+        assertEquals("56789", response.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals("bytes 5-9/20", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void matchingEtagIsNotModified() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("If-None-Match", ETAG);
+        MockHttpServletResponse response = get(request);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void staleIfRangeServesWholeFile() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=5-9");
+        request.addHeader("If-Range", "\"old\"");
+        MockHttpServletResponse response = get(request);
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rangePastEndIsNotSatisfiable() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=100-");
+        MockHttpServletResponse response = get(request);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void sendfileIsUsedWhenSupported() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader("Range", "bytes=10-");
+        MockHttpServletResponse response = get(request);
+        assertEquals(206, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(20L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void compressedFileIsPassedThroughToGzipClients() throws IOException {
+        useCompressedFile();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Accept-Encoding", "br, gzip");
+        MockHttpServletResponse response = get(request);
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("\"abc123-gzip\"", response.getHeader("ETag"));
+        assertArrayEquals(Files.readAllBytes(download.getPath()), response.getContentAsByteArray());
+    }
+
+    @Test
+    void compressedFileIsDecompressedForRanges() throws IOException {
+        useCompressedFile();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Accept-Encoding", "gzip");
+        request.addHeader("Range", "bytes=5-9");
+        MockHttpServletResponse response = get(request);
+        assertEquals(206, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("56789", response.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals(ETAG, response.getHeader("ETag"));
+        // Decompression goes through BlobCompressor, so it shows in the metrics
+        assertEquals(10.0, meterRegistry.counter("documents.storage.decompression.bytes").count());
+    }
+
+    @Test
+    void compressedFileIsDecompressedForOtherClients() throws IOException {
+        useCompressedFile();
+        MockHttpServletResponse response = get(new MockHttpServletRequest("GET", "/download"));
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+    }
+
+    private void useCompressedFile() throws IOException {
+        Path file = tempDir.resolve("notes.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+        }
+        download = new FileDownload(file, "notes.txt", "text/plain", CONTENT.length(), ETAG,
+                Instant.parse("2026-01-01T00:00:00Z"), "gzip");
+    }
+
+    private MockHttpServletResponse get(MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(download, request, response);
+        return response;
+    }
+}
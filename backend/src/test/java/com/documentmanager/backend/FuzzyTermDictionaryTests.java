@@ -0,0 +1,67 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.util.FuzzyTermDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FuzzyTermDictionaryTests {
+
+    private FuzzyTermDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new FuzzyTermDictionary();
+        dictionary.add("invoice", 1L);
+        dictionary.add("invoices", 2L);
+        dictionary.add("involve", 3L);
+        dictionary.add("payment", 4L);
+        dictionary.add("invoce", 5L);
+    }
+
+    @Test
+    void distanceZeroIsAnExactLookup() {
+        assertEquals(Set.of(1L), dictionary.search("invoice", 0));
+        assertTrue(dictionary.search("invoic", 0).isEmpty());
+    }
+
+    @Test
+    void distanceOneAllowsOneInsertionDeletionOrSubstitution() {
+        // "invoices" adds a letter, "invoce" drops one; "involve" needs two substitutions
+        assertEquals(Set.of(1L, 2L, 5L), dictionary.search("invoice", 1));
+        assertEquals(Set.of(1L), dictionary.search("invoize", 1));
+    }
+
+    @Test
+    void distanceTwoReachesFurther() {
+        assertEquals(Set.of(1L, 2L, 3L, 5L), dictionary.search("invoice", 2));
+    }
+
+    @Test
+    void ocrConfusionOfRnForMIsTwoEdits() {
+        assertTrue(dictionary.search("payrnent", 1).isEmpty());
+        assertEquals(Set.of(4L), dictionary.search("payrnent", 2));
+    }
+
+    @Test
+    void transpositionCountsAsTwoEdits() {
+        assertEquals(Set.of(), dictionary.search("paymnet", 1));
+        assertEquals(Set.of(4L), dictionary.search("paymnet", 2));
+    }
+
+    @Test
+    void removedIdsAreNoLongerFound() {
+        dictionary.add("payment", 6L);
+        dictionary.remove("payment", 4L);
+        assertEquals(Set.of(6L), dictionary.search("payment", 0));
+        assertEquals(5, dictionary.size());
+
+        dictionary.remove("payment", 6L);
+        assertTrue(dictionary.search("payment", 1).isEmpty());
+        assertEquals(4, dictionary.size());
+    }
+}
@@ -0,0 +1,195 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.DocumentRepository;
+import com.documentmanager.repository.UserRepository;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Seeds tens of thousands of documents across many users and checks that the hot
+ * DocumentRepository queries are planned with the indexes from db/migration rather
+ * than sequential scans, and only touch the user's partition. The SQL explained is the
+ * one Hibernate generates for the repository method, captured by a statement inspector.
+ * Everything is rolled back afterwards.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.documentmanager.backend.HotQueryPlanTests$CapturingStatementInspector")
+@Transactional
+class HotQueryPlanTests {
+
+    private static final int USERS = 400;
+    private static final int DOCUMENTS_PER_USER = 100;
+    private static final Pattern DOCUMENT_PARTITION = Pattern.compile("documents_p\\d+");
+    private static final Pattern OCR_TEXT_PARTITION = Pattern.compile("document_ocr_texts_p\\d+");
+    private static final Pattern ROW_LIMIT = Pattern.compile(
+            "(\\s+offset\\s+\\?\\s+rows)?\\s+fetch\\s+first\\s+\\?\\s+rows\\s+only|\\s+limit\\s+\\?(\\s+offset\\s+\\?)?",
+            Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private long userId;
+
+    @BeforeEach
+    void seed() {
+        String prefix = "qp_" + UUID.randomUUID().toString().substring(0, 8) + "_";
+        jdbcTemplate.update("INSERT INTO users (username, email, password, first_name, last_name, created_at, updated_at, active) " +
+                "SELECT ? || g, ? || g || '@example.com', 'password', 'Query', 'Plan', now(), now(), true " +
+                "FROM generate_series(1, ?) g", prefix, prefix, USERS);
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT id FROM users WHERE username LIKE ? ORDER BY id",
+                Long.class, prefix + "%");
+        userId = userIds.get(0);
+
+        // One in ten documents has a file and is still waiting for OCR
+        jdbcTemplate.update("INSERT INTO documents (id, title, number, date, description, created_at, updated_at, " +
+                "user_id, ocr_processed, search_text) " +
+                "SELECT nextval('documents_seq'), 'Document ' || g, 'N-' || g, DATE '2020-01-01' + (g % 1500), NULL, " +
+                "now() - (g || ' minutes')::interval, now(), u.id, g % 10 <> 0, 'document ' || g || ' n-' || g " +
+                "FROM users u CROSS JOIN generate_series(1, ?) g WHERE u.username LIKE ?",
+                DOCUMENTS_PER_USER, prefix + "%");
+        jdbcTemplate.update("INSERT INTO file_attachments (id, original_filename, stored_filename, content_type, " +
+                "file_size, file_path, uploaded_at, document_id) " +
+                "SELECT nextval('file_attachments_seq'), 'scan.pdf', 'scan.pdf', 'application/pdf', 1024, '/tmp/scan.pdf', now(), d.id " +
+                "FROM documents d JOIN users u ON u.id = d.user_id WHERE u.username LIKE ? AND d.ocr_processed = false",
+                prefix + "%");
+        jdbcTemplate.update("INSERT INTO document_ocr_texts (document_id, user_id, text, search_text) " +
+                "SELECT d.id, d.user_id, 'scanned text ' || d.id, 'scanned text ' || d.id " +
+                "FROM documents d JOIN users u ON u.id = d.user_id WHERE u.username LIKE ? AND d.ocr_processed = true",
+                prefix + "%");
+        jdbcTemplate.execute("ANALYZE users");
+        jdbcTemplate.execute("ANALYZE documents");
+        jdbcTemplate.execute("ANALYZE file_attachments");
+        jdbcTemplate.execute("ANALYZE document_ocr_texts");
+    }
+
+    @Test
+    void firstPageUsesUserIndex() {
+        User user = user();
+        String sql = generatedSql(() -> documentRepository.findFirstSliceByUser(user, "", PageRequest.of(0, 20)));
+        assertNoSeqScan(sql, userId, "", "", "");
+    }
+
+    @Test
+    void keysetPageUsesUserIndex() {
+        LocalDateTime createdAt = LocalDateTime.now().minusMinutes(100);
+        User user = user();
+        String sql = generatedSql(() -> documentRepository.findSliceByUserAfter(user, "", createdAt, 0L,
+                PageRequest.of(0, 20)));
+        assertNoSeqScan(sql, userId, createdAt, 0L, "", "", "");
+    }
+
+    @Test
+    void pendingOcrUsesPartialIndex() {
+        User user = user();
+        String sql = generatedSql(() -> documentRepository.findByUserAndOcrNotProcessed(user));
+        assertNoSeqScan(sql, userId);
+    }
+
+    @Test
+    void searchDoesNotScanAllDocuments() {
+        User user = user();
+        String sql = generatedSql(() -> documentRepository.findSummariesByUserAndSearch(user, "document 12",
+                PageRequest.of(0, 20)));
+        assertNoSeqScan(sql, userId, "document 12", "document 12");
+    }
+
+    @Test
+    void listIsPrunedToOnePartition() {
+        User user = user();
+        String sql = generatedSql(() -> documentRepository.findFirstSliceByUser(user, "", PageRequest.of(0, 20)));
+        assertSinglePartition(sql, userId, "", "", "");
+    }
+
+    @Test
+    void searchIsPrunedToOnePartition() {
+        User user = user();
+        String sql = generatedSql(() -> documentRepository.findSummariesByUserAndSearch(user, "document 12",
+                PageRequest.of(0, 20)));
+        assertSinglePartition(sql, userId, "document 12", "document 12");
+    }
+
+    // Loaded before the call, so its own SELECT is not the one captured
+    private User user() {
+        return userRepository.findById(userId).orElseThrow();
+    }
+
+    // The first SELECT Hibernate sent for the call, with its row limit made a literal so only
+    // the query's own parameters are left to bind, in the order they appear in the JPQL
+    private String generatedSql(Runnable call) {
+        CapturingStatementInspector.STATEMENTS.clear();
+        call.run();
+        String sql = CapturingStatementInspector.STATEMENTS.stream()
+                .filter(statement -> statement.trim().toLowerCase(Locale.ROOT).startsWith("select"))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No SELECT captured"));
+        Matcher limit = ROW_LIMIT.matcher(sql);
+        return limit.find() ? limit.replaceFirst("") + " LIMIT 20" : sql;
+    }
+
+    // EXPLAIN ANALYZE, so runtime pruning shows as well; parameters are bound, so the plan is
+    // made for their values like the application's
+    private void assertSinglePartition(String sql, Object... parameters) {
+        String plan = explain("EXPLAIN (ANALYZE, COSTS OFF) " + sql, parameters);
+        assertEquals(1, partitions(DOCUMENT_PARTITION, plan).size(), "Expected one documents partition:\n" + plan);
+        assertTrue(partitions(OCR_TEXT_PARTITION, plan).size() <= 1, "Expected at most one OCR text partition:\n" + plan);
+    }
+
+    private Set<String> partitions(Pattern pattern, String plan) {
+        Set<String> names = new HashSet<>();
+        Matcher matcher = pattern.matcher(plan);
+        while (matcher.find()) {
+            names.add(matcher.group());
+        }
+        return names;
+    }
+
+    private void assertNoSeqScan(String sql, Object... parameters) {
+        String plan = explain("EXPLAIN " + sql, parameters);
+        assertFalse(plan.contains("Seq Scan on documents"), "Sequential scan on documents:\n" + plan);
+        assertFalse(plan.contains("Seq Scan on file_attachments"), "Sequential scan on file_attachments:\n" + plan);
+    }
+
+    private String explain(String explainSql, Object... parameters) {
+        return String.join("\n", jdbcTemplate.queryForList(explainSql, String.class, parameters));
+    }
+
+    /**
+     * Records the SQL of every statement Hibernate prepares in this test context.
+     */
+    public static class CapturingStatementInspector implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.service.impl.LocalBlobStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalBlobStoreTests {
+
+    private static final String KEY = "blobs/ab/cd/abcd1234";
+
+    @TempDir
+    Path tempDir;
+
+    private LocalBlobStore store;
+    private Path source;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new LocalBlobStore(tempDir.resolve("cold"));
+        source = Files.writeString(tempDir.resolve("source"), "scanned page");
+    }
+
+    @Test
+    void putThenGetRoundTrips() throws IOException {
+        store.put(KEY, source);
+        assertTrue(store.exists(KEY));
+
+        Path target = tempDir.resolve("recalled");
+        store.get(KEY, target);
+        assertEquals("scanned page", Files.readString(target));
+    }
+
+    @Test
+    void deleteIsIdempotent() throws IOException {
+        store.put(KEY, source);
+        store.delete(KEY);
+        store.delete(KEY);
+        assertFalse(store.exists(KEY));
+    }
+
+    @Test
+    void missingObjectIsNoSuchFile() {
+        assertThrows(NoSuchFileException.class, () -> store.get(KEY, tempDir.resolve("recalled")));
+    }
+
+    @Test
+    void keysCannotEscapeTheRoot() {
+        assertThrows(IOException.class, () -> store.put("../outside", source));
+    }
+}
@@ -0,0 +1,88 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.util.MinHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MinHashTests {
+
+    // Default of duplicates.similarity-threshold
+    private static final double THRESHOLD = 0.8;
+
+    private static final List<String> WORDS = IntStream.range(0, 300)
+            .mapToObj(i -> "word" + i)
+            .collect(Collectors.toList());
+
+    @Test
+    void identicalTextsAgreeEverywhere() {
+        int[] a = MinHash.signature(String.join(" ", WORDS));
+        int[] b = MinHash.signature(String.join(" ", WORDS));
+        assertEquals(1.0, MinHash.similarity(a, b));
+        assertArrayEquals(MinHash.bandKeys(a), MinHash.bandKeys(b));
+    }
+
+    @Test
+    void textWithAFewOcrErrorsIsANearDuplicate() {
+        List<String> words = new ArrayList<>(WORDS);
+        for (int i = 0; i < words.size(); i += 60) {
+            words.set(i, "typo" + i);
+        }
+        int[] original = MinHash.signature(String.join(" ", WORDS));
+        int[] scanned = MinHash.signature(String.join(" ", words));
+
+        assertTrue(MinHash.similarity(original, scanned) >= THRESHOLD);
+        assertTrue(sharesBand(original, scanned), "Near-duplicates must meet in an LSH bucket");
+    }
+
+    @Test
+    void textWithHalfRewrittenIsBelowThreshold() {
+        List<String> words = new ArrayList<>(WORDS);
+        for (int i = words.size() / 2; i < words.size(); i++) {
+            words.set(i, "other" + i);
+        }
+        int[] original = MinHash.signature(String.join(" ", WORDS));
+        int[] rewritten = MinHash.signature(String.join(" ", words));
+
+        assertTrue(MinHash.similarity(original, rewritten) < THRESHOLD);
+    }
+
+    @Test
+    void unrelatedTextsShareNoBand() {
+        int[] a = MinHash.signature(String.join(" ", WORDS));
+        int[] b = MinHash.signature(IntStream.range(0, 300).mapToObj(i -> "other" + i).collect(Collectors.joining(" ")));
+        assertTrue(MinHash.similarity(a, b) < THRESHOLD);
+        assertFalse(sharesBand(a, b));
+    }
+
+    @Test
+    void textWithoutWordsHasNoSignature() {
+        assertNull(MinHash.signature(" ,. -"));
+    }
+
+    @Test
+    void signatureRoundTripsThroughBytes() {
+        int[] signature = MinHash.signature(String.join(" ", WORDS));
+        assertArrayEquals(signature, MinHash.fromBytes(MinHash.toBytes(signature)));
+    }
+
+    private boolean sharesBand(int[] a, int[] b) {
+        long[] keysA = MinHash.bandKeys(a);
+        long[] keysB = MinHash.bandKeys(b);
+        for (int band = 0; band < MinHash.BANDS; band++) {
+            if (keysA[band] == keysB[band]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
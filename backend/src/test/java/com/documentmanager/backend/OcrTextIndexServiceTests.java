@@ -0,0 +1,102 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.entity.User;
+import com.documentmanager.repository.DocumentOcrTextRepository;
+import com.documentmanager.service.OcrTextIndexService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OcrTextIndexServiceTests {
+
+    private final DocumentOcrTextRepository ocrTextRepository = mock(DocumentOcrTextRepository.class);
+    private final OcrTextIndexService service = new OcrTextIndexService();
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        user.setId(7L);
+        ReflectionTestUtils.setField(service, "maxPostings", 1_000_000L);
+        ReflectionTestUtils.setField(service, "idleMinutes", 30L);
+        ReflectionTestUtils.setField(service, "buildBatchSize", 2);
+        ReflectionTestUtils.setField(service, "maxChanges", 10);
+        ReflectionTestUtils.setField(service, "ocrTextRepository", ocrTextRepository);
+        ReflectionTestUtils.setField(service, "searchIndexExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+
+        when(ocrTextRepository.findIndexVersion(7L)).thenReturn(1L);
+        when(ocrTextRepository.findOcrTextByUserAfter(eq(user), eq(0L), any())).thenReturn(List.of(
+                new Object[]{1L, "Fatura İzmir"}, new Object[]{2L, "Makbuz Ankara"}));
+        when(ocrTextRepository.findOcrTextByUserAfter(eq(user), eq(2L), any())).thenReturn(List.<Object[]>of(
+                new Object[]{3L, "Fatura Ankara"}));
+    }
+
+    @Test
+    void firstSearchBuildsTheIndexInBatches() {
+        assertNull(service.fuzzySearch(user, "fatura"));
+
+        assertEquals(Set.of(1L, 3L), service.fuzzySearch(user, "fatrua"));
+        assertEquals(Set.of(3L), service.fuzzySearch(user, "fatura ankra"));
+        verify(ocrTextRepository, times(2)).findOcrTextByUserAfter(eq(user), anyLong(), any());
+    }
+
+    @Test
+    void changedDocumentsAreReReadInsteadOfRebuilding() {
+        service.fuzzySearch(user, "fatura");
+
+        // Document 1 got new text and document 2 was deleted
+        when(ocrTextRepository.findIndexVersion(7L)).thenReturn(3L);
+        when(ocrTextRepository.findChangedDocumentIds(7L, 1L, 3L)).thenReturn(List.of(1L, 2L));
+        when(ocrTextRepository.findOcrTextByUserAndDocumentIdIn(eq(user), anyCollection())).thenReturn(
+                List.<Object[]>of(new Object[]{1L, "Dekont Bursa"}));
+
+        assertEquals(Set.of(3L), service.fuzzySearch(user, "fatura"));
+        assertEquals(Set.of(1L), service.fuzzySearch(user, "dekont"));
+        assertEquals(Set.of(3L), service.fuzzySearch(user, "ankara"));
+        verify(ocrTextRepository, times(2)).findOcrTextByUserAfter(eq(user), anyLong(), any());
+        verify(ocrTextRepository, times(1)).findChangedDocumentIds(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void indexIsRebuiltWhenChangesWereDeleted() {
+        service.fuzzySearch(user, "fatura");
+
+        when(ocrTextRepository.findIndexVersion(7L)).thenReturn(3L);
+        when(ocrTextRepository.findChangedDocumentIds(7L, 1L, 3L)).thenReturn(List.of(1L));
+
+        // Rebuilt inline by the test executor, so the next search uses the new index
+        assertNull(service.fuzzySearch(user, "fatura"));
+        verify(ocrTextRepository, never()).findOcrTextByUserAndDocumentIdIn(any(), anyCollection());
+        verify(ocrTextRepository, times(4)).findOcrTextByUserAfter(eq(user), anyLong(), any());
+        assertEquals(Set.of(1L, 3L), service.fuzzySearch(user, "fatura"));
+    }
+
+    @Test
+    void indexFarBehindIsRebuilt() {
+        service.fuzzySearch(user, "fatura");
+
+        when(ocrTextRepository.findIndexVersion(7L)).thenReturn(20L);
+
+        assertNull(service.fuzzySearch(user, "fatura"));
+        verify(ocrTextRepository, never()).findChangedDocumentIds(anyLong(), anyLong(), anyLong());
+        verify(ocrTextRepository, times(4)).findOcrTextByUserAfter(eq(user), anyLong(), any());
+    }
+}
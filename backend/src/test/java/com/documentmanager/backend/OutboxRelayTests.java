@@ -0,0 +1,194 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.entity.OutboxEvent;
+import com.documentmanager.repository.OutboxEventRepository;
+import com.documentmanager.service.OutboxEventHandler;
+import com.documentmanager.service.OutboxRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTests {
+
+    private static final int BATCH_SIZE = 3;
+
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FakeHandler handler = new FakeHandler();
+    private final OutboxRelay relay = new OutboxRelay();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(relay, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 10);
+        ReflectionTestUtils.setField(relay, "leaseSeconds", 60);
+        ReflectionTestUtils.setField(relay, "asyncLeaseSeconds", 1800);
+        ReflectionTestUtils.setField(relay, "outboxEventRepository", outboxEventRepository);
+        ReflectionTestUtils.setField(relay, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(relay, "handlers", List.of(handler));
+        ReflectionTestUtils.setField(relay, "meterRegistry", meterRegistry);
+        relay.init();
+    }
+
+    @Test
+    void synchronousSuccessIsProcessed() {
+        OutboxEvent event = event(1L);
+        batches(List.of(event));
+
+        relay.relay();
+
+        assertNotNull(event.getProcessedAt());
+        assertEquals(0, event.getAttempts());
+        assertEquals(1.0, meterRegistry.counter("documents.outbox.dispatched").count());
+    }
+
+    @Test
+    void synchronousFailureCountsAnAttempt() {
+        OutboxEvent event = event(1L);
+        batches(List.of(event));
+        handler.outcomes.add(CompletableFuture.failedFuture(new IllegalStateException("OCR failed")));
+
+        relay.relay();
+
+        assertNull(event.getProcessedAt());
+        assertEquals(1, event.getAttempts());
+        assertEquals("OCR failed", event.getLastError());
+        assertTrue(event.getAvailableAt().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    void asynchronousWorkKeepsTheEventLeasedUntilItFails() {
+        OutboxEvent event = event(1L);
+        batches(List.of(event));
+        CompletableFuture<Void> work = new CompletableFuture<>();
+        handler.outcomes.add(work);
+
+        relay.relay();
+
+        assertNull(event.getProcessedAt());
+        assertEquals(0, event.getAttempts());
+        assertTrue(event.getAvailableAt().isAfter(LocalDateTime.now().plusSeconds(1700)));
+        verify(outboxEventRepository, never()).markFailed(any(), any(), any());
+
+        work.completeExceptionally(new IllegalStateException("OCR failed"));
+        verify(outboxEventRepository).markFailed(eq(1L), eq("OCR failed"), any());
+        verify(outboxEventRepository, never()).markProcessed(any(), any());
+    }
+
+    @Test
+    void asynchronousSuccessIsProcessedByTheWorker() {
+        OutboxEvent event = event(1L);
+        batches(List.of(event));
+        CompletableFuture<Void> work = new CompletableFuture<>();
+        handler.outcomes.add(work);
+
+        relay.relay();
+        work.complete(null);
+
+        verify(outboxEventRepository).markProcessed(eq(1L), any());
+    }
+
+    @Test
+    void rejectedEventsAreReleasedWithoutCountingAnAttempt() {
+        OutboxEvent first = event(1L);
+        OutboxEvent rejected = event(2L);
+        OutboxEvent notTried = event(3L);
+        // A full batch, so without back-pressure the relay would claim the next one at once
+        batches(List.of(first, rejected, notTried), List.of(event(4L)));
+        handler.outcomes.add(CompletableFuture.completedFuture(null));
+        handler.outcomes.add(CompletableFuture.failedFuture(new RejectedExecutionException("queue full")));
+
+        relay.relay();
+
+        assertNotNull(first.getProcessedAt());
+        for (OutboxEvent event : List.of(rejected, notTried)) {
+            assertNull(event.getProcessedAt());
+            assertEquals(0, event.getAttempts());
+            assertNull(event.getLastError());
+            assertFalse(event.getAvailableAt().isAfter(LocalDateTime.now()));
+        }
+        assertEquals(2, handler.handled.size());
+        verify(outboxEventRepository, times(1)).findDispatchable(any(), anyInt(), any());
+        assertEquals(0.0, meterRegistry.counter("documents.outbox.failed").count());
+        assertEquals(2.0, meterRegistry.counter("documents.outbox.deferred").count());
+    }
+
+    @Test
+    void executorThrowingRejectionIsBackPressureToo() {
+        OutboxEvent event = event(1L);
+        batches(List.of(event));
+        handler.rejectSynchronously = true;
+
+        relay.relay();
+
+        assertEquals(0, event.getAttempts());
+        assertNull(event.getProcessedAt());
+        assertEquals(1.0, meterRegistry.counter("documents.outbox.deferred").count());
+    }
+
+    @SafeVarargs
+    private void batches(List<OutboxEvent>... batches) {
+        var stub = when(outboxEventRepository.findDispatchable(any(), anyInt(), any()));
+        for (List<OutboxEvent> batch : batches) {
+            stub = stub.thenReturn(batch);
+        }
+        stub.thenReturn(List.of());
+    }
+
+    private OutboxEvent event(Long id) {
+        OutboxEvent event = new OutboxEvent(OutboxEvent.OCR_REQUESTED, 7L, 100L + id);
+        ReflectionTestUtils.setField(event, "id", id);
+        return event;
+    }
+
+    // Returns the queued outcomes in order, then completes synchronously
+    private static class FakeHandler implements OutboxEventHandler {
+        final List<CompletableFuture<Void>> outcomes = new ArrayList<>();
+        final List<OutboxEvent> handled = new ArrayList<>();
+        boolean rejectSynchronously;
+
+        @Override
+        public String getEventType() {
+            return OutboxEvent.OCR_REQUESTED;
+        }
+
+        @Override
+        public void handle(OutboxEvent event) {
+            handled.add(event);
+        }
+
+        @Override
+        public CompletableFuture<Void> handleAsync(OutboxEvent event) {
+            if (rejectSynchronously) {
+                // What CompletableFuture.runAsync does when the executor rejects the task
+                throw new RejectedExecutionException("queue full");
+            }
+            handled.add(event);
+            return outcomes.isEmpty() ? CompletableFuture.completedFuture(null) : outcomes.remove(0);
+        }
+    }
+}
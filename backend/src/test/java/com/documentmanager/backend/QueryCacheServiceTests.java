@@ -0,0 +1,58 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.config.RecentWrites;
+import com.documentmanager.service.QueryCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryCacheServiceTests {
+
+    private final QueryCacheService cache = new QueryCacheService();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 30L);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "recentWrites", new RecentWrites());
+        cache.init();
+    }
+
+    @Test
+    void repeatedQueryIsServedFromTheCache() {
+        assertEquals(1, load(7L));
+        assertEquals(1, load(7L));
+        assertEquals(2, load(8L));
+    }
+
+    @Test
+    void invalidationDropsOnlyThatUsersResults() {
+        load(7L);
+        load(8L);
+
+        cache.invalidateUser(7L);
+
+        assertEquals(3, load(7L));
+        assertEquals(2, load(8L));
+    }
+
+    @Test
+    void expiredResultIsReloaded() {
+        // A write handled by another instance does not bump this instance's generation
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+
+        assertEquals(1, load(7L));
+        assertEquals(2, load(7L));
+    }
+
+    private int load(Long userId) {
+        return cache.get(userId, "documents|page=0", loads::incrementAndGet);
+    }
+}
@@ -0,0 +1,97 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.config.RecentWrites;
+import com.documentmanager.config.ReplicaRoutingDataSource;
+import com.documentmanager.util.AuthenticatedUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTests {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replicaConnection = mock(Connection.class);
+
+    private final RecentWrites recentWrites = new RecentWrites();
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        routing = new ReplicaRoutingDataSource(primary, replica, recentWrites, 60_000, 60_000);
+        authenticate(1L, "alice");
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clear();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsUseReplica() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(replicaConnection, routing.getConnection());
+    }
+
+    @Test
+    void readWriteTransactionsUsePrimary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        assertSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    void readsAfterOwnWriteStayOnPrimary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        routing.getConnection();
+        TransactionSynchronizationUtils.triggerAfterCommit();
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, routing.getConnection());
+
+        authenticate(2L, "bob");
+        assertSame(replicaConnection, routing.getConnection());
+    }
+
+    @Test
+    void readsAfterBackgroundWriteStayOnPrimary() throws SQLException {
+        // Recorded by user id from a thread without a request user, e.g. after background OCR
+        recentWrites.recordWrite(1L);
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, routing.getConnection());
+
+        authenticate(2L, "bob");
+        assertSame(replicaConnection, routing.getConnection());
+    }
+
+    @Test
+    void unavailableReplicaFallsBackToPrimary() throws SQLException {
+        when(replica.getConnection()).thenThrow(new SQLException("connection refused"));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, routing.getConnection());
+    }
+
+    private void authenticate(Long id, String username) {
+        AuthenticatedUser user = new AuthenticatedUser(id, username, "", true, List.of());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+}
@@ -0,0 +1,255 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.entity.FileBlob;
+import com.documentmanager.repository.FileAttachmentRepository;
+import com.documentmanager.repository.FileBlobRepository;
+import com.documentmanager.repository.UploadSessionRepository;
+import com.documentmanager.service.FilePurgeService;
+import com.documentmanager.service.impl.FileStorageServiceImpl;
+import com.documentmanager.service.impl.StorageScrubber;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageScrubberTests {
+
+    private static final String HASH = "abcd" + "0".repeat(60);
+    private static final String KEY = "blobs/ab/cd/" + HASH;
+
+    @TempDir
+    Path tempDir;
+
+    private final FileBlobRepository fileBlobRepository = mock(FileBlobRepository.class);
+    private final FileAttachmentRepository fileAttachmentRepository = mock(FileAttachmentRepository.class);
+    private final FilePurgeService filePurgeService = mock(FilePurgeService.class);
+
+    private StorageScrubber scrubber;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FileStorageServiceImpl fileStorageService = new FileStorageServiceImpl();
+        ReflectionTestUtils.setField(fileStorageService, "uploadDir", tempDir.toString());
+        ReflectionTestUtils.setField(fileStorageService, "meterRegistry", meterRegistry);
+        fileStorageService.init();
+
+        scrubber = new StorageScrubber();
+        ReflectionTestUtils.setField(scrubber, "enabled", true);
+        ReflectionTestUtils.setField(scrubber, "cycleIntervalHours", 0);
+        ReflectionTestUtils.setField(scrubber, "maxRunSeconds", 30);
+        ReflectionTestUtils.setField(scrubber, "batchSize", 200);
+        ReflectionTestUtils.setField(scrubber, "maxFilesPerSecond", 0);
+        ReflectionTestUtils.setField(scrubber, "maxBytesPerSecond", 0L);
+        ReflectionTestUtils.setField(scrubber, "verifyChecksums", false);
+        ReflectionTestUtils.setField(scrubber, "graceHours", 0);
+        ReflectionTestUtils.setField(scrubber, "quarantineRetentionDays", 30);
+        ReflectionTestUtils.setField(scrubber, "fileStorageService", fileStorageService);
+        ReflectionTestUtils.setField(scrubber, "fileBlobRepository", fileBlobRepository);
+        ReflectionTestUtils.setField(scrubber, "fileAttachmentRepository", fileAttachmentRepository);
+        ReflectionTestUtils.setField(scrubber, "uploadSessionRepository", mock(UploadSessionRepository.class));
+        ReflectionTestUtils.setField(scrubber, "filePurgeService", filePurgeService);
+        ReflectionTestUtils.setField(scrubber, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(scrubber, "meterRegistry", meterRegistry);
+        scrubber.init();
+    }
+
+    // ---- orphans ----
+
+    @Test
+    void unreferencedFileIsQuarantinedUnderTheContentLock() throws IOException {
+        Path file = storeFile(KEY);
+
+        scrubber.run();
+
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(tempDir.resolve("quarantine").resolve(KEY)));
+        InOrder order = inOrder(fileBlobRepository);
+        order.verify(fileBlobRepository).lockContent(HASH);
+        order.verify(fileBlobRepository).findByIdForUpdate(HASH);
+    }
+
+    @Test
+    void fileOfABlobIsKept() throws IOException {
+        Path file = storeFile(KEY);
+        when(fileBlobRepository.findAllById(anyCollection())).thenReturn(List.of(blob(KEY, 1)));
+
+        scrubber.run();
+
+        assertTrue(Files.exists(file));
+        verify(fileBlobRepository, never()).lockContent(any());
+    }
+
+    @Test
+    void fileReferencedOnlyByAnAttachmentIsKept() throws IOException {
+        Path file = storeFile(KEY);
+        when(fileBlobRepository.findAllById(anyCollection())).thenReturn(List.of(blob(KEY + ".gz", 1)));
+        when(fileAttachmentRepository.existsByContentHashAndFilePath(HASH, KEY)).thenReturn(true);
+
+        scrubber.run();
+
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void fileIsKeptWhenAnUploadCommitsItsBlobWhileTheScrubberWaits() throws IOException {
+        // Not referenced when the directory is read; the upload holding the content lock commits first
+        Path file = storeFile(KEY);
+        when(fileBlobRepository.findByIdForUpdate(HASH)).thenReturn(Optional.of(blob(KEY, 1)));
+
+        scrubber.run();
+
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(tempDir.resolve("quarantine").resolve(KEY)));
+    }
+
+    @Test
+    void recentFileIsKept() throws IOException {
+        ReflectionTestUtils.setField(scrubber, "graceHours", 24);
+        Path file = storeFile(KEY);
+
+        scrubber.run();
+
+        assertTrue(Files.exists(file));
+        verify(fileBlobRepository, never()).findByIdForUpdate(any());
+    }
+
+    @Test
+    void leftoverTemporaryFileIsQuarantined() throws IOException {
+        Path file = storeFile("blobs/ab/cd/upload-123.tmp");
+
+        scrubber.run();
+
+        assertFalse(Files.exists(file));
+        assertTrue(Files.exists(tempDir.resolve("quarantine/blobs/ab/cd/upload-123.tmp")));
+    }
+
+    @Test
+    void quarantinedFilesAreDeletedAfterRetention() throws IOException {
+        Path quarantined = storeFile("quarantine/" + KEY);
+        scrubber.run();
+        assertTrue(Files.exists(quarantined));
+
+        ReflectionTestUtils.setField(scrubber, "quarantineRetentionDays", 0);
+        scrubber.run();
+        assertFalse(Files.exists(quarantined));
+    }
+
+    // ---- reference counts ----
+
+    @Test
+    void missingReferencesAreAddedAtOnce() throws IOException {
+        FileBlob blob = scannedBlob(1);
+        attachments(2);
+
+        scrubber.run();
+
+        assertEquals(2, blob.getRefCount());
+    }
+
+    @Test
+    void excessReferencesAreLoweredAfterTwoCyclesWithTheSameExcess() throws IOException {
+        FileBlob blob = scannedBlob(3);
+        attachments(2);
+
+        scrubber.run();
+        assertEquals(3, blob.getRefCount());
+
+        scrubber.run();
+        assertEquals(2, blob.getRefCount());
+    }
+
+    @Test
+    void changingExcessIsNotLowered() throws IOException {
+        // An import still storing files: its references change from one cycle to the next
+        FileBlob blob = scannedBlob(3);
+        attachments(2);
+        scrubber.run();
+
+        attachments(1);
+        scrubber.run();
+        assertEquals(3, blob.getRefCount());
+
+        scrubber.run();
+        assertEquals(1, blob.getRefCount());
+    }
+
+    @Test
+    void excessIsNotLoweredWhenTheRecountUnderTheLockDiffers() throws IOException {
+        FileBlob blob = scannedBlob(3);
+        attachments(2);
+        scrubber.run();
+
+        // Same excess while scanning, but a document committed before the row lock was taken
+        when(fileAttachmentRepository.countByContentHashAndFilePath(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{HASH, KEY, 2L}), List.<Object[]>of(new Object[]{HASH, KEY, 3L}));
+        scrubber.run();
+
+        assertEquals(3, blob.getRefCount());
+        verify(filePurgeService, never()).scheduleBlob(any(), any());
+    }
+
+    @Test
+    void blobLoweredToNoReferencesIsScheduledForPurge() throws IOException {
+        FileBlob blob = scannedBlob(1);
+        attachments(0);
+
+        scrubber.run();
+        scrubber.run();
+
+        assertEquals(0, blob.getRefCount());
+        verify(filePurgeService).scheduleBlob(HASH, KEY);
+    }
+
+    private Path storeFile(String key) throws IOException {
+        Path file = tempDir.resolve(key);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, "scanned page");
+    }
+
+    private FileBlob blob(String filePath, int refCount) {
+        FileBlob blob = new FileBlob();
+        ReflectionTestUtils.setField(blob, "contentHash", HASH);
+        ReflectionTestUtils.setField(blob, "storedSize", 12L);
+        blob.setFilePath(filePath);
+        blob.setRefCount(refCount);
+        return blob;
+    }
+
+    private FileBlob scannedBlob(int refCount) throws IOException {
+        storeFile(KEY);
+        FileBlob blob = blob(KEY, refCount);
+        when(fileBlobRepository.findBatchAfter(eq(""), any())).thenReturn(List.of(blob));
+        when(fileBlobRepository.findAllById(anyCollection())).thenReturn(List.of(blob));
+        when(fileBlobRepository.findByIdForUpdate(HASH)).thenReturn(Optional.of(blob));
+        return blob;
+    }
+
+    private void attachments(long count) {
+        List<Object[]> rows = count == 0 ? List.of() : List.<Object[]>of(new Object[]{HASH, KEY, count});
+        when(fileAttachmentRepository.countByContentHashAndFilePath(anyCollection())).thenReturn(rows);
+    }
+}
@@ -0,0 +1,49 @@
+package com.documentmanager.backend;
+
+import com.documentmanager.util.TextNormalizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TextNormalizerTests {
+
+    @Test
+    void dottedAndDotlessCapitalIFoldToI() {
+        assertEquals("istanbul", TextNormalizer.fold("İSTANBUL"));
+        assertEquals("istanbul", TextNormalizer.fold("ISTANBUL"));
+        assertEquals("istanbul", TextNormalizer.fold("Istanbul"));
+        assertEquals("istanbul", TextNormalizer.fold("istanbul"));
+    }
+
+    @Test
+    void dotlessSmallIFoldsToI() {
+        assertEquals("ilik", TextNormalizer.fold("ılık"));
+        assertEquals("isik", TextNormalizer.fold("IŞIK"));
+    }
+
+    @Test
+    void combiningDotAboveIsDropped() {
+        // "i" followed by U+0307, as produced by locale-unaware lower-casing of "İ"
+        assertEquals("izmir", TextNormalizer.fold("i̇zmir"));
+    }
+
+    @Test
+    void turkishLettersFoldToAscii() {
+        assertEquals("calisma", TextNormalizer.fold("ÇALIŞMA"));
+        assertEquals("ogrenci unvani", TextNormalizer.fold("Öğrenci Ünvanı"));
+    }
+
+    @Test
+    void tokenizeSplitsFoldedWords() {
+        assertEquals(List.of("fatura", "no", "12", "a", "izmir"), TextNormalizer.tokenize("Fatura No: 12/A — İzmir"));
+    }
+
+    @Test
+    void nullStaysNull() {
+        assertNull(TextNormalizer.fold(null));
+        assertEquals(List.of(), TextNormalizer.tokenize(null));
+    }
+}